@@ -4,9 +4,13 @@ import com.stufy.fragmc.icedspear.api.IcedSpearAPI;
 import com.stufy.fragmc.icedspear.commands.*;
 import com.stufy.fragmc.icedspear.managers.*;
 import com.stufy.fragmc.icedspear.listeners.*;
+import com.stufy.fragmc.icedspear.storage.*;
 import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.sql.SQLException;
+
 public class IcedSpear extends JavaPlugin {
     private MapManager mapManager;
     private PartyManager partyManager;
@@ -15,6 +19,11 @@ public class IcedSpear extends JavaPlugin {
     private SchematicManager schematicManager;
     private LeaderboardManager leaderboardManager;
     private TimerManager timerManager;
+    private GhostManager ghostManager;
+    private PersistenceService persistenceService;
+    private AttemptHistory attemptHistory;
+    private LeaderboardStorage leaderboardStorage;
+    private FriendStorage friendStorage;
     private IcedSpearAPI api;
 
     @Override
@@ -22,14 +31,22 @@ public class IcedSpear extends JavaPlugin {
         // Save default config
         saveDefaultConfig();
 
+        // Background writer for data files, used by the managers below
+        persistenceService = new PersistenceService(this);
+        persistenceService.start();
+        attemptHistory = new AttemptHistory(this, new File(getDataFolder(), "history"));
+        attemptHistory.start();
+        openStorage();
+
         // Initialize managers
         configManager = new ConfigManager(this);
         schematicManager = new SchematicManager(this);
-        leaderboardManager = new LeaderboardManager(this);
+        leaderboardManager = new LeaderboardManager(this, leaderboardStorage);
         mapManager = new MapManager(this, schematicManager, configManager);
         partyManager = new PartyManager(this, mapManager, configManager);
-        friendManager = new FriendManager(this);
-        timerManager = new TimerManager(this, leaderboardManager, partyManager, mapManager);
+        friendManager = new FriendManager(this, friendStorage);
+        ghostManager = new GhostManager(this, leaderboardManager);
+        timerManager = new TimerManager(this, leaderboardManager, partyManager);
 
         // Initialize API
         api = new IcedSpearAPI(this, mapManager, partyManager, friendManager, schematicManager, configManager);
@@ -45,7 +62,7 @@ public class IcedSpear extends JavaPlugin {
         getCommand("leaderboard").setExecutor(new LeaderboardCommand(leaderboardManager, mapManager, schematicManager));
 
         // Register listeners
-        getServer().getPluginManager().registerEvents(new MapListener(mapManager, configManager, timerManager), this);
+        getServer().getPluginManager().registerEvents(new MapListener(mapManager, configManager, timerManager, ghostManager), this);
         getServer().getPluginManager().registerEvents(new PartyListener(partyManager), this);
 
         getLogger().info("IcedSpear has been enabled!");
@@ -54,18 +71,71 @@ public class IcedSpear extends JavaPlugin {
 
     @Override
     public void onDisable() {
-        // Stop timer manager
+        // Stop timer manager, ending the runs still going. Must come before the attempt history shuts down.
         if (timerManager != null) {
             timerManager.shutdown();
         }
 
+        // Remove ghost entities before their worlds go away
+        if (ghostManager != null) {
+            ghostManager.shutdown();
+        }
+
         // Clean up all active maps
         if (mapManager != null) {
             mapManager.cleanup();
         }
+
+        // Stop watching the schematics folder
+        if (schematicManager != null) {
+            schematicManager.shutdown();
+        }
+
+        // Close the leaderboard and friend storage
+        if (leaderboardManager != null) {
+            leaderboardManager.shutdown();
+        }
+        if (friendStorage != null) {
+            friendStorage.close();
+        }
+
+        // Queue the attempts still buffered, including the runs the timer manager ended above
+        if (attemptHistory != null) {
+            attemptHistory.shutdown();
+        }
+
+        // Write everything still pending
+        if (persistenceService != null) {
+            persistenceService.shutdown();
+        }
         getLogger().info("IcedSpear has been disabled!");
     }
 
+    /**
+     * Pick the leaderboard and friend storage from storage.type, falling back to the YAML files
+     */
+    private void openStorage() {
+        if (getConfig().getString("storage.type", "yaml").equalsIgnoreCase("sqlite")) {
+            SqliteStorage database = null;
+            try {
+                database = new SqliteStorage(this, new File(getDataFolder(), getConfig().getString("storage.sqlite.file", "icedspear.db")));
+                new YamlMigrator(this).migrate(database);
+                leaderboardStorage = database;
+                friendStorage = database;
+                return;
+            } catch (SQLException e) {
+                getLogger().severe("Could not open the SQLite database, using YAML files instead: " + e.getMessage());
+                // Opened but the import failed, the YAML files take over so the connections must not stay open
+                if (database != null) {
+                    database.close();
+                }
+            }
+        }
+
+        leaderboardStorage = new YamlLeaderboardStorage(this);
+        friendStorage = new YamlFriendStorage(this);
+    }
+
     public MapManager getMapManager() {
         return mapManager;
     }
@@ -94,6 +164,18 @@ public class IcedSpear extends JavaPlugin {
         return timerManager;
     }
 
+    public GhostManager getGhostManager() {
+        return ghostManager;
+    }
+
+    public PersistenceService getPersistenceService() {
+        return persistenceService;
+    }
+
+    public AttemptHistory getAttemptHistory() {
+        return attemptHistory;
+    }
+
     public IcedSpearAPI getAPI() {
         return api;
     }
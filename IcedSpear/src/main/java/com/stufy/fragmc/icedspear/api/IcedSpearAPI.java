@@ -3,8 +3,12 @@ package com.stufy.fragmc.icedspear.api;
 import com.stufy.fragmc.icedspear.IcedSpear;
 import com.stufy.fragmc.icedspear.api.events.*;
 import com.stufy.fragmc.icedspear.managers.*;
+import com.stufy.fragmc.icedspear.models.GlobalRankEntry;
+import com.stufy.fragmc.icedspear.models.LeaderboardEntry;
+import com.stufy.fragmc.icedspear.models.LeaderboardWindow;
 import com.stufy.fragmc.icedspear.models.MapInstance;
 import com.stufy.fragmc.icedspear.models.Party;
+import com.stufy.fragmc.icedspear.storage.AttemptIterator;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 
@@ -247,6 +251,110 @@ public class IcedSpearAPI {
         return schematicManager.getAllMaps();
     }
 
+    // ===== LEADERBOARD API =====
+
+    /**
+     * Get the fastest times on a map
+     * @param mapName The map name
+     * @param window DAILY, WEEKLY or MONTHLY, or null for all time
+     * @param limit Maximum number of entries
+     * @return Entries, best first
+     */
+    public List<LeaderboardEntry> getTopTimes(String mapName, LeaderboardWindow window, int limit) {
+        return plugin.getLeaderboardManager().getTopTimes(mapName, window, limit);
+    }
+
+    /**
+     * Get a player's rank on a map
+     * @param mapName The map name
+     * @param window DAILY, WEEKLY or MONTHLY, or null for all time
+     * @param playerId Player UUID
+     * @return Rank (1-based), or -1 if the player has no time. With SQLite storage a rank below
+     *         the cached places is looked up in the background, and is -1 until it is known.
+     */
+    public int getPlayerRank(String mapName, LeaderboardWindow window, UUID playerId) {
+        return plugin.getLeaderboardManager().getPlayerRank(mapName, window, playerId);
+    }
+
+    /**
+     * Get a player's best time on a map
+     * @param mapName The map name
+     * @param window DAILY, WEEKLY or MONTHLY, or null for all time
+     * @param playerId Player UUID
+     * @return Time in milliseconds, or -1 if the player has no time or it is still being looked up
+     */
+    public long getPlayerTime(String mapName, LeaderboardWindow window, UUID playerId) {
+        return plugin.getLeaderboardManager().getPlayerTime(mapName, window, playerId);
+    }
+
+    /**
+     * Get the number of finishes on a map, counting every run rather than just personal bests
+     * @param mapName The map name
+     * @return Number of finishes
+     */
+    public long getCompletionCount(String mapName) {
+        return plugin.getLeaderboardManager().getCompletionCount(mapName);
+    }
+
+    /**
+     * Get the share of all finishes on a map that were slower than a time
+     * @param mapName The map name
+     * @param time Time in milliseconds
+     * @return Percentage between 0 and 100
+     */
+    public double getPercentSlowerThan(String mapName, long time) {
+        return plugin.getLeaderboardManager().getPercentSlowerThan(mapName, time);
+    }
+
+    /**
+     * Get the time that a percentage of finishes on a map were at or below, e.g. 50 for the median
+     * @param mapName The map name
+     * @param percentile Percentile between 0 and 100
+     * @return Time in milliseconds, accurate to about 3%, or -1 if the map has no finishes
+     */
+    public long getTimeAtPercentile(String mapName, double percentile) {
+        return plugin.getLeaderboardManager().getTimeAtPercentile(mapName, percentile);
+    }
+
+    /**
+     * Get the players with the most points across all maps. Each map awards points to its
+     * top global-ranking.ranked-places players, from that many for first down to 1.
+     * @param limit Maximum number of entries
+     * @return Entries, best first
+     */
+    public List<GlobalRankEntry> getGlobalTop(int limit) {
+        return plugin.getLeaderboardManager().getGlobalTop(limit);
+    }
+
+    /**
+     * Get a player's rank across all maps
+     * @param playerId Player UUID
+     * @return Rank (1-based), or -1 if the player has no points
+     */
+    public int getGlobalRank(UUID playerId) {
+        return plugin.getLeaderboardManager().getGlobalRank(playerId);
+    }
+
+    /**
+     * Get a player's points across all maps
+     * @param playerId Player UUID
+     * @return Points, 0 if the player has none
+     */
+    public long getGlobalPoints(UUID playerId) {
+        return plugin.getLeaderboardManager().getGlobalPoints(playerId);
+    }
+
+    /**
+     * Stream every finished and abandoned attempt on a map, oldest first. Attempts from the
+     * last attempt-history.flush-interval-seconds may not be written yet. Can be used off the
+     * main thread; close the iterator when done.
+     * @param mapName The map name
+     * @return Iterator over the attempts
+     */
+    public AttemptIterator getAttemptHistory(String mapName) {
+        return plugin.getAttemptHistory().iterate(mapName);
+    }
+
     // ===== CONFIG API =====
 
     /**
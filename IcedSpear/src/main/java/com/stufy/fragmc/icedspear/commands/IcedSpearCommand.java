@@ -5,6 +5,7 @@ import com.stufy.fragmc.icedspear.managers.ConfigManager;
 import com.stufy.fragmc.icedspear.managers.MapManager;
 import com.stufy.fragmc.icedspear.managers.SchematicManager;
 import com.stufy.fragmc.icedspear.models.MapInstance;
+import com.stufy.fragmc.icedspear.models.MapState;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -58,6 +59,18 @@ public class IcedSpearCommand implements CommandExecutor, TabCompleter {
                 handleRemove(sender, args[1]);
                 break;
 
+            case "compile":
+                if (!sender.hasPermission("icedspear.admin")) {
+                    sender.sendMessage(ChatColor.RED + "You don't have permission!");
+                    return true;
+                }
+                if (args.length < 2) {
+                    sender.sendMessage(ChatColor.RED + "Usage: /icedspear compile <schematic-name|all>");
+                    return true;
+                }
+                handleCompile(sender, args[1]);
+                break;
+
             case "list":
                 handleList(sender);
                 break;
@@ -142,6 +155,34 @@ public class IcedSpearCommand implements CommandExecutor, TabCompleter {
         }
     }
 
+    private void handleCompile(CommandSender sender, String schematicName) {
+        List<String> schematics = schematicName.equalsIgnoreCase("all")
+                ? new ArrayList<>(new TreeSet<>(schematicManager.getAllMaps().values()))
+                : Collections.singletonList(schematicName);
+
+        sender.sendMessage(ChatColor.YELLOW + "Compiling " + schematics.size() + " schematic(s)...");
+
+        // Compiling reads the whole schematic, keep it off the main thread
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            int compiled = 0;
+            for (String schematic : schematics) {
+                if (schematicManager.compileSchematic(schematic)) {
+                    compiled++;
+                }
+            }
+
+            int total = compiled;
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                if (total == schematics.size()) {
+                    sender.sendMessage(ChatColor.GREEN + "Compiled " + total + " schematic(s)");
+                } else {
+                    sender.sendMessage(ChatColor.YELLOW + "Compiled " + total + "/" + schematics.size() +
+                            " schematic(s). The rest keep using the .schem file, see console for details.");
+                }
+            });
+        });
+    }
+
     private void handleList(CommandSender sender) {
         Map<String, MapInstance> instances = mapManager.getActiveInstances();
 
@@ -157,6 +198,9 @@ public class IcedSpearCommand implements CommandExecutor, TabCompleter {
             String type = instance.isPublic() ? ChatColor.GREEN + "[PUBLIC]" : ChatColor.YELLOW + "[PRIVATE]";
             int players = instance.getPlayers().size();
             String state = ChatColor.GRAY + instance.getState().name();
+            if (instance.getState() == MapState.CREATING) {
+                state += " " + instance.getPasteProgress() + "%";
+            }
 
             sender.sendMessage(type + " " + ChatColor.WHITE + instance.getMapName() +
                     ChatColor.GRAY + " (" + players + " players) " + state);
@@ -202,7 +246,7 @@ public class IcedSpearCommand implements CommandExecutor, TabCompleter {
             }
             configManager.setMapDataUrl(args[1]);
             schematicManager.loadMapData();
-            sender.sendMessage(ChatColor.GREEN + "Map data URL updated and reloaded!");
+            sender.sendMessage(ChatColor.GREEN + "Map data URL updated, reloading maps in the background...");
         } else {
             sendConfigUsage(sender);
         }
@@ -239,6 +283,7 @@ public class IcedSpearCommand implements CommandExecutor, TabCompleter {
         sender.sendMessage(ChatColor.GOLD + "=== IcedSpear Admin Commands ===");
         sender.sendMessage(ChatColor.YELLOW + "/icedspear import <schematic>" + ChatColor.GRAY + " - Import a WorldEdit schematic");
         sender.sendMessage(ChatColor.YELLOW + "/icedspear remove <schematic>" + ChatColor.GRAY + " - Remove a schematic");
+        sender.sendMessage(ChatColor.YELLOW + "/icedspear compile <schematic|all>" + ChatColor.GRAY + " - Precompile schematics for faster pastes");
         sender.sendMessage(ChatColor.YELLOW + "/icedspear list" + ChatColor.GRAY + " - List active lobbies");
         sender.sendMessage(ChatColor.YELLOW + "/icedspear reload" + ChatColor.GRAY + " - Reload configuration");
         sender.sendMessage(ChatColor.YELLOW + "/icedspear config" + ChatColor.GRAY + " - Configure plugin settings");
@@ -257,7 +302,7 @@ public class IcedSpearCommand implements CommandExecutor, TabCompleter {
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         if (args.length == 1) {
-            return Arrays.asList("import", "remove", "list", "reload", "config", "block", "unblock");
+            return Arrays.asList("import", "remove", "compile", "list", "reload", "config", "block", "unblock");
         } else if (args.length == 2 && args[0].equalsIgnoreCase("config")) {
             return Arrays.asList("maxplayers", "cleanupdelay", "mapurl");
         }
@@ -3,7 +3,9 @@ package com.stufy.fragmc.icedspear.commands;
 import com.stufy.fragmc.icedspear.managers.LeaderboardManager;
 import com.stufy.fragmc.icedspear.managers.MapManager;
 import com.stufy.fragmc.icedspear.managers.SchematicManager;
+import com.stufy.fragmc.icedspear.models.GlobalRankEntry;
 import com.stufy.fragmc.icedspear.models.LeaderboardEntry;
+import com.stufy.fragmc.icedspear.models.LeaderboardWindow;
 import com.stufy.fragmc.icedspear.models.MapInstance;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -17,14 +19,21 @@ import org.bukkit.entity.Player;
 import java.util.*;
 
 public class LeaderboardCommand implements CommandExecutor, TabCompleter {
+    private static final String GLOBAL = "global";
+    private static final String[] FOOTER = {"", ChatColor.GOLD + "▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬", ""};
+
     private final LeaderboardManager leaderboardManager;
     private final MapManager mapManager;
     private final SchematicManager schematicManager;
 
+    // Map name (plus window), or "global" -> rendered top 10, kept until that leaderboard's version changes
+    private final Map<String, RenderedLeaderboard> views;
+
     public LeaderboardCommand(LeaderboardManager leaderboardManager, MapManager mapManager, SchematicManager schematicManager) {
         this.leaderboardManager = leaderboardManager;
         this.mapManager = mapManager;
         this.schematicManager = schematicManager;
+        this.views = new HashMap<>();
     }
 
     @Override
@@ -36,13 +45,22 @@ public class LeaderboardCommand implements CommandExecutor, TabCompleter {
 
         Player player = (Player) sender;
 
+        // A trailing daily/weekly/monthly picks a time window
+        LeaderboardWindow window = null;
+        if (args.length > 0) {
+            window = LeaderboardWindow.fromName(args[args.length - 1]);
+            if (window != null) {
+                args = Arrays.copyOf(args, args.length - 1);
+            }
+        }
+
         // If no args, show leaderboard for current map
         if (args.length == 0) {
             String instanceId = mapManager.getPlayerInstance(player.getUniqueId());
 
             if (instanceId == null) {
                 player.sendMessage(ChatColor.RED + "You must be in a map or specify a map name!");
-                player.sendMessage(ChatColor.GRAY + "Usage: /leaderboard <mapname>");
+                player.sendMessage(ChatColor.GRAY + "Usage: /leaderboard <mapname> [daily|weekly|monthly]");
                 return true;
             }
 
@@ -52,68 +70,48 @@ public class LeaderboardCommand implements CommandExecutor, TabCompleter {
                 return true;
             }
 
-            showLeaderboard(player, instance.getMapName());
+            showLeaderboard(player, instance.getMapName(), window);
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase(GLOBAL)) {
+            if (window != null) {
+                player.sendMessage(ChatColor.RED + "The global ranking has no time windows!");
+                return true;
+            }
+            showGlobalRanking(player);
             return true;
         }
 
         // Show leaderboard for specified map
         String mapName = args[0];
-        showLeaderboard(player, mapName);
+        showLeaderboard(player, mapName, window);
 
         return true;
     }
 
-    private void showLeaderboard(Player player, String mapName) {
-        List<LeaderboardEntry> topTimes = leaderboardManager.getTopTimes(mapName, 10);
+    private void showLeaderboard(Player player, String mapName, LeaderboardWindow window) {
+        RenderedLeaderboard view = getView(mapName, window);
 
-        if (topTimes.isEmpty()) {
-            player.sendMessage(ChatColor.YELLOW + "No times recorded for " + mapName + " yet!");
+        if (view.lines.length == 0) {
+            player.sendMessage(ChatColor.YELLOW + "No times recorded for " + mapName
+                    + (window != null ? " " + window.getDisplayName().toLowerCase() : "") + " yet!");
             player.sendMessage(ChatColor.GRAY + "Be the first to set a time!");
             return;
         }
 
-        player.sendMessage("");
-        player.sendMessage(ChatColor.GOLD + "▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬");
-        player.sendMessage(ChatColor.YELLOW + ChatColor.BOLD.toString() + "  " + mapName + " - Leaderboard");
-        player.sendMessage("");
-
-        for (int i = 0; i < topTimes.size(); i++) {
-            LeaderboardEntry entry = topTimes.get(i);
-            int rank = i + 1;
-
-            String rankColor;
-            String rankSymbol;
-
-            if (rank == 1) {
-                rankColor = ChatColor.GOLD.toString();
-                rankSymbol = "🥇";
-            } else if (rank == 2) {
-                rankColor = ChatColor.GRAY.toString();
-                rankSymbol = "🥈";
-            } else if (rank == 3) {
-                rankColor = ChatColor.GOLD.toString();
-                rankSymbol = "🥉";
-            } else {
-                rankColor = ChatColor.WHITE.toString();
-                rankSymbol = rank + ".";
-            }
+        player.sendMessage(view.header);
 
+        for (int i = 0; i < view.lines.length; i++) {
             // Highlight player's own time
-            boolean isPlayerTime = entry.getPlayerId().equals(player.getUniqueId());
-            String nameColor = isPlayerTime ? ChatColor.GREEN.toString() + ChatColor.BOLD : ChatColor.WHITE.toString();
-
-            player.sendMessage(
-                    rankColor + "  " + rankSymbol + " " +
-                            nameColor + entry.getPlayerName() +
-                            ChatColor.GRAY + " - " +
-                            ChatColor.YELLOW + entry.getFormattedTime()
-            );
+            boolean isPlayerTime = view.playerIds[i].equals(player.getUniqueId());
+            player.sendMessage(isPlayerTime ? view.ownLines[i] : view.lines[i]);
         }
 
         // Show player's rank if not in top 10
-        int playerRank = leaderboardManager.getPlayerRank(mapName, player.getUniqueId());
+        int playerRank = leaderboardManager.getPlayerRank(mapName, window, player.getUniqueId());
         if (playerRank > 10) {
-            long playerTime = leaderboardManager.getPlayerTime(mapName, player.getUniqueId());
+            long playerTime = leaderboardManager.getPlayerTime(mapName, window, player.getUniqueId());
             String formattedTime = formatTime(playerTime);
 
             player.sendMessage("");
@@ -123,9 +121,132 @@ public class LeaderboardCommand implements CommandExecutor, TabCompleter {
                     ChatColor.WHITE + formattedTime);
         }
 
-        player.sendMessage("");
-        player.sendMessage(ChatColor.GOLD + "▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬");
-        player.sendMessage("");
+        player.sendMessage(FOOTER);
+    }
+
+    private void showGlobalRanking(Player player) {
+        RenderedLeaderboard view = getGlobalView();
+
+        if (view.lines.length == 0) {
+            player.sendMessage(ChatColor.YELLOW + "No one is ranked yet!");
+            return;
+        }
+
+        player.sendMessage(view.header);
+
+        for (int i = 0; i < view.lines.length; i++) {
+            boolean isPlayer = view.playerIds[i].equals(player.getUniqueId());
+            player.sendMessage(isPlayer ? view.ownLines[i] : view.lines[i]);
+        }
+
+        int playerRank = leaderboardManager.getGlobalRank(player.getUniqueId());
+        if (playerRank > 10) {
+            player.sendMessage("");
+            player.sendMessage(ChatColor.GRAY + "  Your Rank: " +
+                    ChatColor.YELLOW + "#" + playerRank +
+                    ChatColor.GRAY + " - " +
+                    ChatColor.WHITE + leaderboardManager.getGlobalPoints(player.getUniqueId()) + " pts");
+        }
+
+        player.sendMessage(FOOTER);
+    }
+
+    /**
+     * Get the rendered top 10 of the global ranking, rendering it again only if it changed
+     */
+    private RenderedLeaderboard getGlobalView() {
+        long version = leaderboardManager.getGlobalVersion();
+        RenderedLeaderboard view = views.get(GLOBAL);
+        if (view != null && view.version == version) {
+            return view;
+        }
+
+        List<GlobalRankEntry> top = leaderboardManager.getGlobalTop(10);
+        view = new RenderedLeaderboard(version, top.size());
+
+        view.header = new String[]{
+                "",
+                ChatColor.GOLD + "▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬",
+                ChatColor.YELLOW + ChatColor.BOLD.toString() + "  Global Ranking",
+                ""
+        };
+
+        for (int i = 0; i < top.size(); i++) {
+            GlobalRankEntry entry = top.get(i);
+            String prefix = getRankPrefix(i + 1);
+            String suffix = ChatColor.GRAY + " - " + ChatColor.YELLOW + entry.getPoints() + " pts";
+
+            view.playerIds[i] = entry.getPlayerId();
+            view.lines[i] = prefix + ChatColor.WHITE + entry.getPlayerName() + suffix;
+            view.ownLines[i] = prefix + ChatColor.GREEN + ChatColor.BOLD + entry.getPlayerName() + suffix;
+        }
+
+        views.put(GLOBAL, view);
+        return view;
+    }
+
+    /**
+     * Get the rendered top 10 of a map, rendering it again only if the leaderboard changed.
+     * Empty leaderboards are not cached.
+     */
+    private RenderedLeaderboard getView(String mapName, LeaderboardWindow window) {
+        String key = window != null ? mapName + "#" + window.name() : mapName;
+        long version = leaderboardManager.getVersion(mapName, window);
+        RenderedLeaderboard view = views.get(key);
+        if (view != null && view.version == version) {
+            return view;
+        }
+
+        List<LeaderboardEntry> topTimes = leaderboardManager.getTopTimes(mapName, window, 10);
+        if (topTimes.isEmpty()) {
+            // Any name can be typed in, so only maps with times are kept
+            views.remove(key);
+            return new RenderedLeaderboard(version, 0);
+        }
+
+        view = new RenderedLeaderboard(version, topTimes.size());
+
+        view.header = new String[]{
+                "",
+                ChatColor.GOLD + "▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬",
+                ChatColor.YELLOW + ChatColor.BOLD.toString() + "  " + mapName + " - "
+                        + (window != null ? window.getDisplayName() + " " : "") + "Leaderboard",
+                ""
+        };
+
+        for (int i = 0; i < topTimes.size(); i++) {
+            LeaderboardEntry entry = topTimes.get(i);
+            String prefix = getRankPrefix(i + 1);
+            String suffix = ChatColor.GRAY + " - " + ChatColor.YELLOW + entry.getFormattedTime();
+
+            view.playerIds[i] = entry.getPlayerId();
+            view.lines[i] = prefix + ChatColor.WHITE + entry.getPlayerName() + suffix;
+            view.ownLines[i] = prefix + ChatColor.GREEN + ChatColor.BOLD + entry.getPlayerName() + suffix;
+        }
+
+        views.put(key, view);
+        return view;
+    }
+
+    private String getRankPrefix(int rank) {
+        String rankColor;
+        String rankSymbol;
+
+        if (rank == 1) {
+            rankColor = ChatColor.GOLD.toString();
+            rankSymbol = "🥇";
+        } else if (rank == 2) {
+            rankColor = ChatColor.GRAY.toString();
+            rankSymbol = "🥈";
+        } else if (rank == 3) {
+            rankColor = ChatColor.GOLD.toString();
+            rankSymbol = "🥉";
+        } else {
+            rankColor = ChatColor.WHITE.toString();
+            rankSymbol = rank + ".";
+        }
+
+        return rankColor + "  " + rankSymbol + " ";
     }
 
     private String formatTime(long milliseconds) {
@@ -146,9 +267,34 @@ public class LeaderboardCommand implements CommandExecutor, TabCompleter {
         if (args.length == 1) {
             // Return all available map names
             Set<String> maps = schematicManager.getAllMaps().keySet();
-            return new ArrayList<>(maps);
+            List<String> options = new ArrayList<>(maps);
+            options.add(GLOBAL);
+            return options;
+        }
+
+        if (args.length == 2) {
+            List<String> windows = new ArrayList<>();
+            for (LeaderboardWindow window : LeaderboardWindow.values()) {
+                windows.add(window.name().toLowerCase());
+            }
+            return windows;
         }
 
         return new ArrayList<>();
     }
-}
\ No newline at end of file
+
+    private static class RenderedLeaderboard {
+        private final long version;
+        private final UUID[] playerIds;
+        private final String[] lines;
+        private final String[] ownLines;
+        private String[] header;
+
+        private RenderedLeaderboard(long version, int size) {
+            this.version = version;
+            this.playerIds = new UUID[size];
+            this.lines = new String[size];
+            this.ownLines = new String[size];
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.stufy.fragmc.icedspear.commands;
 
 import com.stufy.fragmc.icedspear.managers.MapManager;
 import com.stufy.fragmc.icedspear.managers.PartyManager;
+import com.stufy.fragmc.icedspear.models.MapInstance;
+import com.stufy.fragmc.icedspear.models.MapState;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -100,6 +102,14 @@ public class MapCommand implements CommandExecutor, TabCompleter {
         player.sendMessage(ChatColor.GREEN + "Creating private map: " + mapName);
         player.sendMessage(ChatColor.GOLD + "Map code: " + ChatColor.YELLOW + code);
         player.sendMessage(ChatColor.GRAY + "Share this code with others to let them join!");
+
+        // Pooled instances are ready straight away
+        MapInstance instance = mapManager.getInstance(instanceId);
+        if (instance != null && instance.getState() == MapState.WAITING) {
+            mapManager.joinMap(player, instanceId);
+            return;
+        }
+
         player.sendMessage(ChatColor.YELLOW + "Please wait while the map loads...");
 
         player.getServer().getScheduler().runTaskLater(
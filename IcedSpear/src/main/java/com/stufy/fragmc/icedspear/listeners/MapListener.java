@@ -2,9 +2,12 @@ package com.stufy.fragmc.icedspear.listeners;
 
 import com.stufy.fragmc.icedspear.api.events.PlayerLeaveMapEvent;
 import com.stufy.fragmc.icedspear.managers.ConfigManager;
+import com.stufy.fragmc.icedspear.managers.GhostManager;
 import com.stufy.fragmc.icedspear.managers.MapManager;
 import com.stufy.fragmc.icedspear.managers.TimerManager;
 import com.stufy.fragmc.icedspear.models.MapInstance;
+import com.stufy.fragmc.icedspear.models.RunSession;
+import com.stufy.fragmc.icedspear.models.RunState;
 import org.bukkit.Bukkit;
 import org.bukkit.GameMode;
 import org.bukkit.Material;
@@ -19,42 +22,43 @@ public class MapListener implements Listener {
     private final MapManager mapManager;
     private final ConfigManager configManager;
     private final TimerManager timerManager;
+    private final GhostManager ghostManager;
 
-    public MapListener(MapManager mapManager, ConfigManager configManager, TimerManager timerManager) {
+    public MapListener(MapManager mapManager, ConfigManager configManager, TimerManager timerManager, GhostManager ghostManager) {
         this.mapManager = mapManager;
         this.configManager = configManager;
         this.timerManager = timerManager;
+        this.ghostManager = ghostManager;
     }
 
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onPlayerMove(PlayerMoveEvent event) {
-        // Paper optimization: Only check if player actually moved blocks
-        if (!event.hasChangedBlock()) {
-            return;
-        }
-
         Player player = event.getPlayer();
-        String instanceId = mapManager.getPlayerInstance(player.getUniqueId());
 
-        if (instanceId == null) {
+        // The only lookup per move; players outside maps have no session
+        RunSession session = timerManager.getSession(player.getUniqueId());
+        if (session == null) {
             return;
         }
 
-        MapInstance instance = mapManager.getInstance(instanceId);
-        if (instance == null) {
+        // Ghosts need every movement, not just the ones that cross a block
+        ghostManager.sample(session, event.getTo());
+
+        // Paper optimization: Only check if player actually moved blocks
+        if (!event.hasChangedBlock()) {
             return;
         }
 
         // Start timer on first movement (if not already started or finished)
-        if (!timerManager.hasStarted(player.getUniqueId()) && !timerManager.hasFinished(player.getUniqueId())) {
-            timerManager.startTimer(player);
+        if (session.getState() == RunState.WAITING) {
+            timerManager.startTimer(player, session);
         }
 
         // Check if player is standing on a diamond block
         if (event.getTo().getBlock().getRelative(0, -1, 0).getType() == Material.DIAMOND_BLOCK) {
             // Stop timer if they haven't finished yet
-            if (!timerManager.hasFinished(player.getUniqueId())) {
-                timerManager.stopTimer(player);
+            if (session.getState() == RunState.RUNNING) {
+                timerManager.stopTimer(player, session);
             }
 
             // Give flight ability
@@ -0,0 +1,183 @@
+package com.stufy.fragmc.icedspear.managers;
+
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.math.BlockVector3;
+
+import java.io.File;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of parsed schematic clipboards, bounded by an estimate
+ * of how much memory they take. Entries are tied to the file's modification time and size.
+ * FAWE clipboards may be backed by disk or mapped memory, so every clipboard handed out
+ * must be given back with {@link #release}; an evicted one is closed once nobody holds it.
+ */
+public class ClipboardCache {
+    // Rough in-memory cost of one block in a parsed clipboard
+    private static final long BYTES_PER_BLOCK = 8;
+
+    private final Map<String, Entry> entries;
+
+    // Clipboards handed out and not yet released, cached or evicted
+    private final Map<Clipboard, Entry> held;
+    private long maxBytes;
+    private long usedBytes;
+
+    public ClipboardCache(long maxBytes) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.held = new IdentityHashMap<>();
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Take a cached clipboard if it was parsed from the current version of the file.
+     * Give it back with {@link #release} when done.
+     * @param schematicName The schematic name
+     * @param schematicFile The schematic file
+     * @return The clipboard, or null if it is not cached or the file changed
+     */
+    public synchronized Clipboard acquire(String schematicName, File schematicFile) {
+        Entry entry = entries.get(schematicName);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.modified != schematicFile.lastModified() || entry.size != schematicFile.length()) {
+            remove(schematicName);
+            return null;
+        }
+
+        hold(entry);
+        return entry.clipboard;
+    }
+
+    /**
+     * Cache a freshly parsed clipboard, evicting the least recently used ones until it fits.
+     * The caller holds it as if it had been acquired and must {@link #release} it either way.
+     */
+    public synchronized void put(String schematicName, File schematicFile, Clipboard clipboard) {
+        long bytes = estimateBytes(clipboard);
+        if (bytes > maxBytes) {
+            return;
+        }
+
+        remove(schematicName);
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (usedBytes + bytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            evict(eldest);
+        }
+
+        Entry entry = new Entry(clipboard, schematicFile.lastModified(), schematicFile.length(), bytes);
+        entries.put(schematicName, entry);
+        usedBytes += bytes;
+        hold(entry);
+    }
+
+    /**
+     * Give back a clipboard from {@link #acquire} or {@link #put}. One that is no longer
+     * cached, or never was, is closed once no one else holds it.
+     */
+    public synchronized void release(Clipboard clipboard) {
+        Entry entry = held.get(clipboard);
+        if (entry == null) {
+            // Too large to cache, so the caller was its only holder
+            close(clipboard);
+            return;
+        }
+
+        if (--entry.holders == 0) {
+            held.remove(clipboard);
+            if (entry.evicted) {
+                close(clipboard);
+            }
+        }
+    }
+
+    public synchronized void remove(String schematicName) {
+        Entry entry = entries.remove(schematicName);
+        if (entry != null) {
+            evict(entry);
+        }
+    }
+
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            evict(entry);
+        }
+        entries.clear();
+    }
+
+    /**
+     * Change the memory limit, evicting entries if the cache is now over it
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            evict(eldest);
+        }
+    }
+
+    private void hold(Entry entry) {
+        if (entry.holders++ == 0) {
+            held.put(entry.clipboard, entry);
+        }
+    }
+
+    // The entry must already be out of the entries map
+    private void evict(Entry entry) {
+        usedBytes -= entry.bytes;
+        entry.evicted = true;
+        if (entry.holders == 0) {
+            close(entry.clipboard);
+        }
+    }
+
+    private void close(Clipboard clipboard) {
+        try {
+            clipboard.close();
+        } catch (Exception ignored) {
+            // Nothing left to do with a clipboard that fails to close
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private long estimateBytes(Clipboard clipboard) {
+        BlockVector3 min = clipboard.getMinimumPoint();
+        BlockVector3 max = clipboard.getMaximumPoint();
+        long volume = (long) (max.x() - min.x() + 1) * (max.y() - min.y() + 1) * (max.z() - min.z() + 1);
+        return volume * BYTES_PER_BLOCK;
+    }
+
+    private static class Entry {
+        private final Clipboard clipboard;
+        private final long modified;
+        private final long size;
+        private final long bytes;
+        private int holders;
+        private boolean evicted;
+
+        private Entry(Clipboard clipboard, long modified, long size, long bytes) {
+            this.clipboard = clipboard;
+            this.modified = modified;
+            this.size = size;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.bukkit.GameRule;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,13 +18,21 @@ public class ConfigManager {
         this.plugin = plugin;
     }
 
+    /**
+     * Queue config.yml to be written in the background
+     */
+    private void saveConfig() {
+        plugin.getPersistenceService().markDirty(new File(plugin.getDataFolder(), "config.yml"),
+                () -> plugin.getConfig().saveToString());
+    }
+
     public int getMaxPlayers() {
         return plugin.getConfig().getInt("max-players", 10);
     }
 
     public void setMaxPlayers(int maxPlayers) {
         plugin.getConfig().set("max-players", maxPlayers);
-        plugin.saveConfig();
+        saveConfig();
     }
 
     public long getCleanupDelay() {
@@ -32,13 +41,74 @@ public class ConfigManager {
 
     public void setCleanupDelay(long seconds) {
         plugin.getConfig().set("cleanup-delay-seconds", seconds);
-        plugin.saveConfig();
+        saveConfig();
     }
 
     public long getNoJoinCleanupDelay() {
         return plugin.getConfig().getLong("no-join-cleanup-delay-seconds", 60);
     }
 
+    public boolean isInstancePoolEnabled() {
+        return plugin.getConfig().getBoolean("instance-pool.enabled", false);
+    }
+
+    public int getInstancePoolMinSize(String mapName) {
+        int globalMin = plugin.getConfig().getInt("instance-pool.min-size", 0);
+        return plugin.getConfig().getInt("instance-pool.sizes." + mapName, globalMin);
+    }
+
+    public int getInstancePoolMaxSize() {
+        return plugin.getConfig().getInt("instance-pool.max-size", 3);
+    }
+
+    public int getInstancePoolMaxTotal() {
+        return plugin.getConfig().getInt("instance-pool.max-total", 20);
+    }
+
+    public long getInstancePoolRefillInterval() {
+        return plugin.getConfig().getLong("instance-pool.refill-interval-seconds", 10);
+    }
+
+    public long getInstancePoolDemandHalfLife() {
+        return plugin.getConfig().getLong("instance-pool.demand-half-life-seconds", 300);
+    }
+
+    public boolean isWorldTemplatesEnabled() {
+        return plugin.getConfig().getBoolean("world-templates.enabled", false);
+    }
+
+    public boolean isPlotsEnabled() {
+        return plugin.getConfig().getBoolean("plots.enabled", false);
+    }
+
+    public int getPlotWorldCount() {
+        return plugin.getConfig().getInt("plots.worlds", 4);
+    }
+
+    public int getPlotGridSize() {
+        return plugin.getConfig().getInt("plots.grid-size", 16);
+    }
+
+    public int getPlotSpacing() {
+        return plugin.getConfig().getInt("plots.spacing", 1024);
+    }
+
+    public int getWorldCleanupThreads() {
+        return plugin.getConfig().getInt("world-cleanup.io-threads", 2);
+    }
+
+    public int getWorldCleanupMaxAttempts() {
+        return plugin.getConfig().getInt("world-cleanup.max-attempts", 5);
+    }
+
+    public boolean isWorldCleanupSweepEnabled() {
+        return plugin.getConfig().getBoolean("world-cleanup.sweep-on-startup", true);
+    }
+
+    public boolean isWorldCleanupLegacySweepEnabled() {
+        return plugin.getConfig().getBoolean("world-cleanup.sweep-legacy-names", false);
+    }
+
     public GameMode getDefaultGameMode() {
         String mode = plugin.getConfig().getString("default-gamemode", "ADVENTURE");
         try {
@@ -142,12 +212,12 @@ public class ConfigManager {
 
     public void blockMapGlobally(String mapName) {
         plugin.getConfig().set("globally-blocked-maps." + mapName, true);
-        plugin.saveConfig();
+        saveConfig();
     }
 
     public void unblockMapGlobally(String mapName) {
         plugin.getConfig().set("globally-blocked-maps." + mapName, false);
-        plugin.saveConfig();
+        saveConfig();
     }
 
     public boolean isMapGloballyBlocked(String mapName) {
@@ -159,7 +229,7 @@ public class ConfigManager {
         if (!blockedMaps.contains(mapName)) {
             blockedMaps.add(mapName);
             plugin.getConfig().set("blocked-maps." + playerUuid, blockedMaps);
-            plugin.saveConfig();
+            saveConfig();
         }
     }
 
@@ -167,7 +237,7 @@ public class ConfigManager {
         List<String> blockedMaps = plugin.getConfig().getStringList("blocked-maps." + playerUuid);
         blockedMaps.remove(mapName);
         plugin.getConfig().set("blocked-maps." + playerUuid, blockedMaps);
-        plugin.saveConfig();
+        saveConfig();
     }
 
     public String getMapDataUrl() {
@@ -176,6 +246,6 @@ public class ConfigManager {
 
     public void setMapDataUrl(String url) {
         plugin.getConfig().set("map-data-url", url);
-        plugin.saveConfig();
+        saveConfig();
     }
 }
\ No newline at end of file
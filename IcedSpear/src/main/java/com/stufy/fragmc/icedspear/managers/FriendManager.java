@@ -3,71 +3,26 @@ package com.stufy.fragmc.icedspear.managers;
 import com.stufy.fragmc.icedspear.IcedSpear;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
+import com.stufy.fragmc.icedspear.storage.FriendStorage;
 import org.bukkit.entity.Player;
-import java.io.File;
-import java.io.IOException;
 import java.util.*;
 
 public class FriendManager {
     private final IcedSpear plugin;
-    private final File friendsFile;
-    private FileConfiguration friendsConfig;
+    private final FriendStorage storage;
     private final Map<UUID, Set<UUID>> friendships;
     private final Map<UUID, Set<UUID>> pendingRequests;
     private final Map<UUID, Set<UUID>> joinRequests; // Friend -> Set of players requesting to join
 
-    public FriendManager(IcedSpear plugin) {
+    public FriendManager(IcedSpear plugin, FriendStorage storage) {
         this.plugin = plugin;
-        this.friendsFile = new File(plugin.getDataFolder(), "friends.yml");
+        this.storage = storage;
         this.friendships = new HashMap<>();
         this.pendingRequests = new HashMap<>();
         this.joinRequests = new HashMap<>();
 
-        loadFriends();
-    }
-
-    private void loadFriends() {
-        if (!friendsFile.exists()) {
-            try {
-                friendsFile.createNewFile();
-            } catch (IOException e) {
-                plugin.getLogger().severe("Could not create friends.yml");
-            }
-        }
-
-        friendsConfig = YamlConfiguration.loadConfiguration(friendsFile);
-
-        if (friendsConfig.contains("friendships")) {
-            for (String key : friendsConfig.getConfigurationSection("friendships").getKeys(false)) {
-                UUID playerId = UUID.fromString(key);
-                List<String> friendIds = friendsConfig.getStringList("friendships." + key);
-
-                Set<UUID> friends = new HashSet<>();
-                for (String friendId : friendIds) {
-                    friends.add(UUID.fromString(friendId));
-                }
-
-                friendships.put(playerId, friends);
-            }
-        }
-    }
-
-    private void saveFriends() {
-        for (Map.Entry<UUID, Set<UUID>> entry : friendships.entrySet()) {
-            List<String> friendIds = new ArrayList<>();
-            for (UUID friendId : entry.getValue()) {
-                friendIds.add(friendId.toString());
-            }
-            friendsConfig.set("friendships." + entry.getKey().toString(), friendIds);
-        }
-
-        try {
-            friendsConfig.save(friendsFile);
-        } catch (IOException e) {
-            plugin.getLogger().severe("Could not save friends.yml");
-        }
+        storage.loadFriendships((playerId, friendId) ->
+                friendships.computeIfAbsent(playerId, k -> new HashSet<>()).add(friendId));
     }
 
     public boolean sendFriendRequest(Player sender, Player target) {
@@ -102,7 +57,7 @@ public class FriendManager {
         friendships.computeIfAbsent(accepterId, k -> new HashSet<>()).add(requesterId);
         friendships.computeIfAbsent(requesterId, k -> new HashSet<>()).add(accepterId);
 
-        saveFriends();
+        storage.addFriendship(accepterId, requesterId);
         return true;
     }
 
@@ -121,7 +76,7 @@ public class FriendManager {
             friendFriends.remove(playerId);
         }
 
-        saveFriends();
+        storage.removeFriendship(playerId, friendId);
         return true;
     }
 
@@ -0,0 +1,340 @@
+package com.stufy.fragmc.icedspear.managers;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+import com.stufy.fragmc.icedspear.models.Ghost;
+import com.stufy.fragmc.icedspear.models.GhostRecorder;
+import com.stufy.fragmc.icedspear.models.LeaderboardEntry;
+import com.stufy.fragmc.icedspear.models.RunSession;
+import com.stufy.fragmc.icedspear.storage.FileNames;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.entity.ItemDisplay;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Records every run as a {@link Ghost} and replays an earlier one next to the runner.
+ * Personal best ghosts are kept in ghosts/map/uuid.ghost; the world record ghost is the
+ * personal best of whoever is first on the map. A ghost is a display entity that only its
+ * runner can see, moved by the server once per tick.
+ */
+public class GhostManager {
+    private static final int INITIAL_BUFFER = 4096;
+    private static final int MAX_POOLED_BUFFER = 256 * 1024;
+    private static final int MAX_POOLED = 16;
+
+    private final IcedSpear plugin;
+    private final LeaderboardManager leaderboardManager;
+    private final File folder;
+
+    // Ghosts being shown, by runner
+    private final Map<UUID, Playback> playbacks;
+
+    // Recording buffers of finished runs, reused by the next ones
+    private final Deque<byte[]> bufferPool;
+
+    // "map/uuid" -> ghost, or null if there is none; least recently used first
+    private final Map<String, Ghost> cache;
+    private final BukkitTask playbackTask;
+
+    // Read once, sample runs on every move
+    private final boolean enabled;
+    private final int maxTicks;
+    private final boolean preferRecord;
+
+    public GhostManager(IcedSpear plugin, LeaderboardManager leaderboardManager) {
+        this.plugin = plugin;
+        this.leaderboardManager = leaderboardManager;
+        this.folder = new File(plugin.getDataFolder(), "ghosts");
+        plugin.getPersistenceService().submit(() -> FileNames.renameLegacyFolders(folder, plugin.getLogger()));
+        this.playbacks = new HashMap<>();
+        this.bufferPool = new ArrayDeque<>();
+        this.enabled = plugin.getConfig().getBoolean("ghosts.enabled", true);
+        this.maxTicks = Math.max(1, plugin.getConfig().getInt("ghosts.max-seconds", 900)) * 20;
+        this.preferRecord = plugin.getConfig().getString("ghosts.replay", "personal-best").equalsIgnoreCase("world-record");
+
+        int cacheSize = Math.max(1, plugin.getConfig().getInt("ghosts.cache-size", 256));
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Ghost> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        this.playbackTask = Bukkit.getScheduler().runTaskTimer(plugin, this::tickPlaybacks, 1L, 1L);
+    }
+
+    /**
+     * Start recording a run and show the ghost to race against
+     */
+    public void startRun(Player player, RunSession session) {
+        if (!enabled) {
+            return;
+        }
+
+        Location origin = session.getInstance().getSpawnLocation();
+        if (origin == null) {
+            return;
+        }
+
+        int tick = Bukkit.getCurrentTick();
+        GhostRecorder recorder = new GhostRecorder(acquireBuffer(), origin.getX(), origin.getY(), origin.getZ(), tick);
+        Location location = player.getLocation();
+        recorder.sample(tick, location.getX(), location.getY(), location.getZ(), location.getYaw(), location.getPitch());
+
+        if (session.getRecorder() != null) {
+            releaseBuffer(session.getRecorder().getBuffer());
+        }
+        session.setRecorder(recorder);
+
+        showGhost(player, session, origin, recorder);
+    }
+
+    /**
+     * Record a player's position if their run is being recorded
+     */
+    public void sample(RunSession session, Location location) {
+        GhostRecorder recorder = session.getRecorder();
+        if (recorder == null) {
+            return;
+        }
+
+        int tick = Bukkit.getCurrentTick();
+        if (recorder.getTicks(tick) > maxTicks) {
+            // Too long to be worth keeping, and the ghost has nothing left to race against
+            stopPlayback(session.getPlayerId());
+            session.setRecorder(null);
+            releaseBuffer(recorder.getBuffer());
+            return;
+        }
+
+        recorder.sample(tick, location.getX(), location.getY(), location.getZ(), location.getYaw(), location.getPitch());
+    }
+
+    /**
+     * End a finished run, keeping its ghost if it was a personal best
+     * @param time The run's time in milliseconds
+     */
+    public void finishRun(Player player, RunSession session, long time, boolean personalBest) {
+        stopPlayback(player.getUniqueId());
+
+        GhostRecorder recorder = session.getRecorder();
+        if (recorder == null) {
+            return;
+        }
+
+        session.setRecorder(null);
+        if (personalBest) {
+            saveGhost(session.getMapName(), player.getUniqueId(), recorder.finish(time, Bukkit.getCurrentTick()));
+        }
+        releaseBuffer(recorder.getBuffer());
+    }
+
+    /**
+     * Drop a run that did not finish
+     */
+    public void cancelRun(RunSession session) {
+        stopPlayback(session.getPlayerId());
+
+        GhostRecorder recorder = session.getRecorder();
+        if (recorder != null) {
+            session.setRecorder(null);
+            releaseBuffer(recorder.getBuffer());
+        }
+    }
+
+    private byte[] acquireBuffer() {
+        byte[] buffer = bufferPool.poll();
+        return buffer != null ? buffer : new byte[INITIAL_BUFFER];
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        // Buffers grown by very long runs are left to the garbage collector
+        if (buffer.length <= MAX_POOLED_BUFFER && bufferPool.size() < MAX_POOLED) {
+            bufferPool.push(buffer);
+        }
+    }
+
+    private void saveGhost(String mapName, UUID playerId, Ghost ghost) {
+        cache.put(mapName + "/" + playerId, ghost);
+
+        File mapFolder = getMapFolder(mapName);
+        // Queued ahead of the write, so the folder exists by the time the file is written
+        plugin.getPersistenceService().submit(mapFolder::mkdirs);
+        plugin.getPersistenceService().markDirtyBytes(new File(mapFolder, playerId + ".ghost"), () -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                ghost.write(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        });
+    }
+
+    // Map names are encoded so none can reach outside the ghosts folder
+    private File getMapFolder(String mapName) {
+        return new File(folder, FileNames.encode(mapName));
+    }
+
+    /**
+     * Get a ghost from the cache or, off the main thread, from its file
+     * @param callback Called on the main thread with the ghost, or null if there is none
+     */
+    private void loadGhost(String mapName, UUID playerId, Consumer<Ghost> callback) {
+        if (playerId == null) {
+            callback.accept(null);
+            return;
+        }
+
+        String key = mapName + "/" + playerId;
+        if (cache.containsKey(key)) {
+            callback.accept(cache.get(key));
+            return;
+        }
+
+        File file = new File(getMapFolder(mapName), playerId + ".ghost");
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            Ghost ghost = null;
+            if (file.exists()) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                    ghost = Ghost.read(in);
+                } catch (IOException e) {
+                    plugin.getLogger().warning("Could not read ghost " + file.getPath() + ": " + e.getMessage());
+                }
+            }
+
+            Ghost loaded = ghost;
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                // A ghost saved meanwhile is newer than the file that was read
+                if (!cache.containsKey(key)) {
+                    cache.put(key, loaded);
+                }
+                callback.accept(cache.get(key));
+            });
+        });
+    }
+
+    /**
+     * Show the personal best or world record ghost, falling back to the other one
+     */
+    private void showGhost(Player player, RunSession session, Location origin, GhostRecorder recorder) {
+        String mapName = session.getMapName();
+        List<LeaderboardEntry> top = leaderboardManager.getTopTimes(mapName, 1);
+        UUID recordHolder = top.isEmpty() ? null : top.get(0).getPlayerId();
+        UUID playerId = player.getUniqueId();
+
+        UUID first = preferRecord ? recordHolder : playerId;
+        UUID second = preferRecord ? playerId : recordHolder;
+
+        loadGhost(mapName, first, ghost -> {
+            if (ghost != null) {
+                play(player, session, ghost, origin, recorder);
+            } else if (second != null && !second.equals(first)) {
+                loadGhost(mapName, second, fallback -> {
+                    if (fallback != null) {
+                        play(player, session, fallback, origin, recorder);
+                    }
+                });
+            }
+        });
+    }
+
+    private void play(Player player, RunSession session, Ghost ghost, Location origin, GhostRecorder recorder) {
+        // The run may have ended while the ghost was loading
+        if (!player.isOnline() || session.getRecorder() != recorder) {
+            return;
+        }
+
+        // Catch up with the run, which started before the ghost was loaded
+        Ghost.Cursor cursor = ghost.cursor();
+        int elapsed = recorder.getTicks(Bukkit.getCurrentTick());
+        for (int i = 0; i < elapsed; i++) {
+            cursor.tick();
+        }
+
+        Location location = new Location(origin.getWorld(), origin.getX(), origin.getY(), origin.getZ());
+        moveTo(location, origin, cursor);
+
+        Material material = Material.matchMaterial(plugin.getConfig().getString("ghosts.item", "PLAYER_HEAD"));
+        ItemDisplay display = origin.getWorld().spawn(location, ItemDisplay.class, entity -> {
+            entity.setPersistent(false);
+            entity.setVisibleByDefault(false);
+            entity.setItemStack(new ItemStack(material != null ? material : Material.PLAYER_HEAD));
+            // Let the client interpolate between the per-tick positions
+            entity.setTeleportDuration(1);
+        });
+        player.showEntity(plugin, display);
+
+        stopPlayback(player.getUniqueId());
+        playbacks.put(player.getUniqueId(), new Playback(display, cursor, origin, location));
+    }
+
+    private void tickPlaybacks() {
+        Iterator<Playback> iterator = playbacks.values().iterator();
+        while (iterator.hasNext()) {
+            Playback playback = iterator.next();
+            if (!playback.display.isValid()) {
+                iterator.remove();
+                continue;
+            }
+
+            if (playback.cursor.tick()) {
+                moveTo(playback.location, playback.origin, playback.cursor);
+                playback.display.teleport(playback.location);
+            }
+
+            if (playback.cursor.isDone()) {
+                playback.display.remove();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static void moveTo(Location location, Location origin, Ghost.Cursor cursor) {
+        location.setX(origin.getX() + cursor.getX());
+        location.setY(origin.getY() + cursor.getY());
+        location.setZ(origin.getZ() + cursor.getZ());
+        location.setYaw(cursor.getYaw());
+        location.setPitch(cursor.getPitch());
+    }
+
+    private void stopPlayback(UUID playerId) {
+        Playback playback = playbacks.remove(playerId);
+        if (playback != null) {
+            playback.display.remove();
+        }
+    }
+
+    /**
+     * Stop playback and recording, removing every ghost entity
+     */
+    public void shutdown() {
+        playbackTask.cancel();
+        for (Playback playback : playbacks.values()) {
+            playback.display.remove();
+        }
+        playbacks.clear();
+    }
+
+    private static class Playback {
+        private final ItemDisplay display;
+        private final Ghost.Cursor cursor;
+        private final Location origin;
+        // Reused for every move
+        private final Location location;
+
+        private Playback(ItemDisplay display, Ghost.Cursor cursor, Location origin, Location location) {
+            this.display = display;
+            this.cursor = cursor;
+            this.origin = origin;
+            this.location = location;
+        }
+    }
+}
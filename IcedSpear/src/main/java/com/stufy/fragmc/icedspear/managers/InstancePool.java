@@ -0,0 +1,216 @@
+package com.stufy.fragmc.icedspear.managers;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+import com.stufy.fragmc.icedspear.models.MapInstance;
+import com.stufy.fragmc.icedspear.models.MapState;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a number of fully prepared private instances per map so that
+ * /map private and party starts can hand one out instead of building a world.
+ * All methods are expected to be called from the main thread.
+ */
+public class InstancePool {
+    private final IcedSpear plugin;
+    private final MapManager mapManager;
+    private final ConfigManager configManager;
+
+    // Map name -> prepared (or still preparing) instances, oldest first
+    private final Map<String, Deque<MapInstance>> pools;
+
+    // Map name -> decayed request count, used to size each pool
+    private final Map<String, Double> demand;
+
+    // Invalidated instances waiting to finish preparing before they are destroyed
+    private final List<MapInstance> retired;
+
+    private BukkitTask refillTask;
+
+    public InstancePool(IcedSpear plugin, MapManager mapManager, ConfigManager configManager) {
+        this.plugin = plugin;
+        this.mapManager = mapManager;
+        this.configManager = configManager;
+        this.pools = new ConcurrentHashMap<>();
+        this.demand = new ConcurrentHashMap<>();
+        this.retired = new ArrayList<>();
+    }
+
+    /**
+     * Start the background refill task if pooling is enabled
+     */
+    public void start() {
+        if (!configManager.isInstancePoolEnabled() || refillTask != null) {
+            return;
+        }
+
+        long interval = Math.max(1, configManager.getInstancePoolRefillInterval()) * 20L;
+        refillTask = Bukkit.getScheduler().runTaskTimer(plugin, this::refill, interval, interval);
+        plugin.getLogger().info("Instance pool enabled (refill every " + interval / 20L + " seconds)");
+    }
+
+    /**
+     * Take a ready instance for a map out of the pool
+     * @param mapName The map name
+     * @return A WAITING instance, or null if none is ready
+     */
+    public MapInstance claim(String mapName) {
+        if (refillTask == null) {
+            return null;
+        }
+
+        demand.merge(mapName, 1.0, Double::sum);
+
+        Deque<MapInstance> pool = pools.get(mapName);
+        if (pool == null) {
+            return null;
+        }
+
+        Iterator<MapInstance> iterator = pool.iterator();
+        while (iterator.hasNext()) {
+            MapInstance instance = iterator.next();
+            if (instance.getState() == MapState.WAITING && instance.getWorld() != null) {
+                iterator.remove();
+                return instance;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Drop every pooled instance of a map, e.g. after its schematic changed.
+     * Instances still being prepared are destroyed by a later refill once they finish.
+     */
+    public void invalidate(String mapName) {
+        Deque<MapInstance> pool = pools.remove(mapName);
+        if (pool == null) {
+            return;
+        }
+
+        for (MapInstance instance : pool) {
+            if (instance.getState() == MapState.CREATING) {
+                retired.add(instance);
+            } else {
+                mapManager.destroyInstance(instance);
+            }
+        }
+    }
+
+    /**
+     * Get the number of pooled instances for a map, including ones still being prepared
+     */
+    public int getPooledCount(String mapName) {
+        Deque<MapInstance> pool = pools.get(mapName);
+        return pool != null ? pool.size() : 0;
+    }
+
+    /**
+     * Get the size the pool of a map is currently being kept at
+     */
+    public int getTargetSize(String mapName) {
+        int min = configManager.getInstancePoolMinSize(mapName);
+        int max = Math.max(min, configManager.getInstancePoolMaxSize());
+        int wanted = (int) Math.ceil(demand.getOrDefault(mapName, 0.0));
+        return Math.max(min, Math.min(max, wanted));
+    }
+
+    /**
+     * Decay demand, drop broken instances and create or trim at most one instance per map
+     */
+    private void refill() {
+        decayDemand();
+
+        retired.removeIf(instance -> {
+            if (instance.getState() == MapState.CREATING) {
+                return false;
+            }
+            mapManager.destroyInstance(instance);
+            return true;
+        });
+
+        Set<String> mapNames = new HashSet<>(plugin.getSchematicManager().getAllMaps().keySet());
+        mapNames.addAll(pools.keySet());
+
+        int total = 0;
+        for (Deque<MapInstance> pool : pools.values()) {
+            total += pool.size();
+        }
+
+        int maxTotal = configManager.getInstancePoolMaxTotal();
+
+        for (String mapName : mapNames) {
+            Deque<MapInstance> pool = pools.computeIfAbsent(mapName, k -> new ArrayDeque<>());
+
+            // Remove instances that failed to prepare
+            Iterator<MapInstance> iterator = pool.iterator();
+            while (iterator.hasNext()) {
+                MapInstance instance = iterator.next();
+                if (instance.getState() == MapState.ERROR) {
+                    iterator.remove();
+                    total--;
+                    mapManager.destroyInstance(instance);
+                }
+            }
+
+            int target = plugin.getSchematicManager().getSchematicForMap(mapName) != null ? getTargetSize(mapName) : 0;
+
+            if (pool.size() < target && total < maxTotal) {
+                pool.addLast(mapManager.preparePooledInstance(mapName));
+                total++;
+            } else if (pool.size() > target) {
+                MapInstance oldest = pool.peekFirst();
+                if (oldest != null && oldest.getState() != MapState.CREATING) {
+                    pool.removeFirst();
+                    total--;
+                    mapManager.destroyInstance(oldest);
+                }
+            }
+
+            if (pool.isEmpty() && target == 0) {
+                pools.remove(mapName);
+            }
+        }
+    }
+
+    private void decayDemand() {
+        double halfLife = Math.max(1, configManager.getInstancePoolDemandHalfLife());
+        double factor = Math.pow(0.5, configManager.getInstancePoolRefillInterval() / halfLife);
+
+        Iterator<Map.Entry<String, Double>> iterator = demand.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Double> entry = iterator.next();
+            double value = entry.getValue() * factor;
+            if (value < 0.01) {
+                iterator.remove();
+            } else {
+                entry.setValue(value);
+            }
+        }
+    }
+
+    /**
+     * Stop refilling and destroy every pooled instance
+     */
+    public void shutdown() {
+        if (refillTask != null) {
+            refillTask.cancel();
+            refillTask = null;
+        }
+
+        for (Deque<MapInstance> pool : pools.values()) {
+            for (MapInstance instance : pool) {
+                mapManager.destroyInstance(instance);
+            }
+        }
+        pools.clear();
+
+        for (MapInstance instance : retired) {
+            mapManager.destroyInstance(instance);
+        }
+        retired.clear();
+    }
+}
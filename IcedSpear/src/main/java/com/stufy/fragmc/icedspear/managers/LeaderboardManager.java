@@ -1,108 +1,234 @@
 package com.stufy.fragmc.icedspear.managers;
 
 import com.stufy.fragmc.icedspear.IcedSpear;
+import com.stufy.fragmc.icedspear.models.CompletionHistogram;
+import com.stufy.fragmc.icedspear.models.GlobalRankEntry;
+import com.stufy.fragmc.icedspear.models.GlobalRanking;
 import com.stufy.fragmc.icedspear.models.LeaderboardEntry;
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
-
-import java.io.File;
-import java.io.IOException;
+import com.stufy.fragmc.icedspear.models.LeaderboardWindow;
+import com.stufy.fragmc.icedspear.models.MapLeaderboard;
+import com.stufy.fragmc.icedspear.models.WindowedLeaderboard;
+import com.stufy.fragmc.icedspear.storage.LeaderboardStorage;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.*;
 import java.util.*;
-import java.util.stream.Collectors;
-
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the best time of every player per map in memory, ranked, and hands new
+ * personal bests to the configured {@link LeaderboardStorage}. A storage that can rank times
+ * itself only has its best few per map kept here and is asked about the rest. Daily, weekly and monthly
+ * leaderboards are kept alongside in leaderboard-windows.dat, and a histogram of every
+ * completion time per map in leaderboard-histograms.dat. A global ranking sums points for
+ * every map rank and is patched as map ranks change.
+ */
 public class LeaderboardManager {
+    private static final int WINDOWS_FORMAT = 1;
+    private static final int HISTOGRAMS_FORMAT = 1;
+    private static final int MAX_OUTSIDE_TIMES = 1024;
+
     private final IcedSpear plugin;
-    private final File leaderboardFile;
-    private FileConfiguration leaderboardConfig;
+    private final LeaderboardStorage storage;
+    private final File windowsFile;
+    private final File histogramsFile;
+
+    // Map name -> ranked entries of that map
+    private final Map<String, MapLeaderboard> leaderboards;
+
+    // Best times per map kept in memory, or 0 for all of them; the storage ranks the rest
+    private final int cachedPlaces;
+
+    // Map name -> players with a time, used when not every time is in memory
+    private final Map<String, Integer> playerCounts;
+
+    // "map/uuid" -> time and rank of a player below the cached places, looked up or set recently
+    private final Map<String, OutsideTime> outsideTimes;
+
+    // "map/uuid" of the outside times being looked up on the writer thread
+    private final Set<String> outsideLookups;
 
-    // Map name -> List of leaderboard entries
-    private final Map<String, List<LeaderboardEntry>> leaderboards;
+    // Points for the top places of every map; only rank changes inside them touch it
+    private final GlobalRanking globalRanking;
+    private final int rankedPlaces;
 
-    public LeaderboardManager(IcedSpear plugin) {
+    // Window -> map name -> rolling leaderboard of that map
+    private final Map<LeaderboardWindow, Map<String, WindowedLeaderboard>> windows;
+    private final BukkitTask rotationTask;
+
+    // Window -> maps changed since the last flush; only these are copied for the writer thread
+    private final Map<LeaderboardWindow, Set<String>> changedWindows;
+
+    // Window -> map name -> buckets as last encoded; used by the writer thread once loaded
+    private final Map<LeaderboardWindow, Map<String, byte[]>> encodedWindows;
+
+    // Map name -> every completion time of that map
+    private final Map<String, CompletionHistogram> histograms;
+
+    // Maps whose histogram changed since the last flush; only these are copied for the writer thread
+    private final Set<String> changedHistograms;
+
+    // Map name -> histogram as last encoded; used by the writer thread once loaded
+    private final Map<String, byte[]> encodedHistograms;
+
+    public LeaderboardManager(IcedSpear plugin, LeaderboardStorage storage) {
         this.plugin = plugin;
-        this.leaderboardFile = new File(plugin.getDataFolder(), "leaderboards.yml");
+        this.storage = storage;
+        this.windowsFile = new File(plugin.getDataFolder(), "leaderboard-windows.dat");
+        this.histogramsFile = new File(plugin.getDataFolder(), "leaderboard-histograms.dat");
         this.leaderboards = new HashMap<>();
+        this.windows = new EnumMap<>(LeaderboardWindow.class);
+        this.changedWindows = new EnumMap<>(LeaderboardWindow.class);
+        this.encodedWindows = new EnumMap<>(LeaderboardWindow.class);
+        for (LeaderboardWindow window : LeaderboardWindow.values()) {
+            windows.put(window, new HashMap<>());
+            changedWindows.put(window, new HashSet<>());
+            encodedWindows.put(window, new HashMap<>());
+        }
+        this.histograms = new HashMap<>();
+        this.changedHistograms = new HashSet<>();
+        this.encodedHistograms = new HashMap<>();
+        this.globalRanking = new GlobalRanking();
+        this.rankedPlaces = Math.max(1, plugin.getConfig().getInt("global-ranking.ranked-places", 100));
+
+        // The global ranking looks one place past the ranked ones
+        this.cachedPlaces = storage.getCachedPlaces() > 0 ? Math.max(storage.getCachedPlaces(), rankedPlaces + 1) : 0;
+        this.playerCounts = new HashMap<>();
+        this.outsideTimes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, OutsideTime> eldest) {
+                return size() > MAX_OUTSIDE_TIMES;
+            }
+        };
+        this.outsideLookups = new HashSet<>();
+
+        long start = System.currentTimeMillis();
+        if (cachedPlaces > 0) {
+            storage.loadPlayerCounts(playerCounts::put);
+            storage.loadTopTimes(cachedPlaces, this::applyTime);
+        } else {
+            storage.loadTimes(this::applyTime);
+        }
+        plugin.getLogger().info("Loaded leaderboards for " + leaderboards.size() + " maps in "
+                + (System.currentTimeMillis() - start) + "ms");
+
+        if (storage.needsCompaction()) {
+            storage.compact(getAllLeaderboards());
+        }
 
-        loadLeaderboards();
+        for (MapLeaderboard leaderboard : leaderboards.values()) {
+            List<LeaderboardEntry> top = leaderboard.getTop(rankedPlaces);
+            for (int i = 0; i < top.size(); i++) {
+                globalRanking.addPoints(top.get(i).getPlayerId(), top.get(i).getPlayerName(), getPoints(i + 1));
+            }
+        }
+
+        loadWindows();
+        loadHistograms();
+        // Buckets are an hour or longer, checking every minute keeps windows current enough
+        rotationTask = Bukkit.getScheduler().runTaskTimer(plugin, this::rotateWindows, 1200L, 1200L);
     }
 
     /**
-     * Load leaderboards from file
+     * Insert a time if it beats the player's current one
+     * @return true if the leaderboard changed
      */
-    private void loadLeaderboards() {
-        if (!leaderboardFile.exists()) {
-            try {
-                leaderboardFile.createNewFile();
-            } catch (IOException e) {
-                plugin.getLogger().severe("Could not create leaderboards.yml");
-            }
+    private boolean applyTime(String mapName, LeaderboardEntry newEntry) {
+        MapLeaderboard leaderboard = leaderboards.computeIfAbsent(mapName, k -> new MapLeaderboard());
+        if (!leaderboard.submit(newEntry)) {
+            return false;
         }
 
-        leaderboardConfig = YamlConfiguration.loadConfiguration(leaderboardFile);
+        // A time pushed below the cached places is still stored, just no longer ranked here
+        if (cachedPlaces > 0 && leaderboard.size() > cachedPlaces) {
+            LeaderboardEntry worst = leaderboard.getWorst();
+            leaderboard.remove(worst.getPlayerId());
+            // The new time itself may be the one pushed out, and then it could be anywhere below
+            boolean pushedOut = worst.getPlayerId().equals(newEntry.getPlayerId());
+            outsideTimes.put(mapName + "/" + worst.getPlayerId(), new OutsideTime(worst, pushedOut ? -1 : cachedPlaces + 1));
+        }
+        return true;
+    }
 
-        // Load all map leaderboards
-        if (leaderboardConfig.contains("leaderboards")) {
-            ConfigurationSection section = leaderboardConfig.getConfigurationSection("leaderboards");
-            if (section != null) {
-                for (String mapName : section.getKeys(false)) {
-                    List<LeaderboardEntry> entries = new ArrayList<>();
+    /**
+     * Check whether some of a map's all-time times are only in the storage
+     */
+    private boolean hasOutsideTimes(String mapName, MapLeaderboard leaderboard) {
+        return cachedPlaces > 0 && playerCounts.getOrDefault(mapName, 0) > (leaderboard != null ? leaderboard.size() : 0);
+    }
 
-                    ConfigurationSection mapSection = section.getConfigurationSection(mapName);
-                    if (mapSection != null) {
-                        for (String key : mapSection.getKeys(false)) {
-                            String playerName = mapSection.getString(key + ".name");
-                            String playerUuid = mapSection.getString(key + ".uuid");
-                            long time = mapSection.getLong(key + ".time");
-                            long timestamp = mapSection.getLong(key + ".timestamp", System.currentTimeMillis());
+    /**
+     * Get a player's all-time entry. Below the cached places only times looked up before are
+     * known; a miss starts a lookup on the writer thread.
+     * @return The entry, or null if the player has no time or it is still being looked up
+     */
+    private LeaderboardEntry findEntry(String mapName, UUID playerId) {
+        MapLeaderboard leaderboard = leaderboards.get(mapName);
+        LeaderboardEntry entry = leaderboard != null ? leaderboard.get(playerId) : null;
+        if (entry != null || !hasOutsideTimes(mapName, leaderboard)) {
+            return entry;
+        }
 
-                            if (playerName != null && playerUuid != null) {
-                                entries.add(new LeaderboardEntry(
-                                        UUID.fromString(playerUuid),
-                                        playerName,
-                                        time,
-                                        timestamp
-                                ));
-                            }
-                        }
-                    }
+        OutsideTime outside = getOutsideTime(mapName, playerId);
+        return outside != null ? outside.entry : null;
+    }
 
-                    // Sort by time (ascending)
-                    entries.sort(Comparator.comparingLong(LeaderboardEntry::getTime));
-                    leaderboards.put(mapName, entries);
-                }
-            }
+    /**
+     * Get a player's time and rank below the cached places, looking them up if they are not known yet
+     * @return The time and rank, or null while they are looked up
+     */
+    private OutsideTime getOutsideTime(String mapName, UUID playerId) {
+        OutsideTime outside = outsideTimes.get(mapName + "/" + playerId);
+        if (outside == null || (outside.entry != null && outside.rank < 1)) {
+            lookUpOutsideTime(mapName, playerId, null);
         }
+        return outside;
     }
 
     /**
-     * Save leaderboards to file
+     * Look up a player's time and rank in the storage on the writer thread, after the writes
+     * queued before it, and keep them for the main thread
+     * @param then Run on the main thread once it is kept, or null
      */
-    private void saveLeaderboards() {
-        // Clear existing data
-        leaderboardConfig.set("leaderboards", null);
-
-        // Save all leaderboards
-        for (Map.Entry<String, List<LeaderboardEntry>> entry : leaderboards.entrySet()) {
-            String mapName = entry.getKey();
-            List<LeaderboardEntry> entries = entry.getValue();
-
-            for (int i = 0; i < entries.size(); i++) {
-                LeaderboardEntry lbEntry = entries.get(i);
-                String path = "leaderboards." + mapName + "." + i;
+    private void lookUpOutsideTime(String mapName, UUID playerId, Runnable then) {
+        String key = mapName + "/" + playerId;
+        if (!outsideLookups.add(key) && then == null) {
+            return;
+        }
 
-                leaderboardConfig.set(path + ".name", lbEntry.getPlayerName());
-                leaderboardConfig.set(path + ".uuid", lbEntry.getPlayerId().toString());
-                leaderboardConfig.set(path + ".time", lbEntry.getTime());
-                leaderboardConfig.set(path + ".timestamp", lbEntry.getTimestamp());
+        plugin.getPersistenceService().submit(() -> {
+            LeaderboardEntry entry = storage.findTime(mapName, playerId);
+            OutsideTime outside = new OutsideTime(entry, entry != null ? storage.countFaster(mapName, entry) + 1 : -1);
+            if (!plugin.isEnabled()) {
+                return;
             }
-        }
 
-        try {
-            leaderboardConfig.save(leaderboardFile);
-        } catch (IOException e) {
-            plugin.getLogger().severe("Could not save leaderboards.yml");
-        }
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                outsideLookups.remove(key);
+                // A faster time may have been set while the lookup ran, or even entered the cached places
+                OutsideTime known = outsideTimes.get(key);
+                boolean stale = known != null && known.entry != null
+                        && (outside.entry == null || outside.entry.getTime() > known.entry.getTime());
+                MapLeaderboard leaderboard = leaderboards.get(mapName);
+                if (!stale && (leaderboard == null || leaderboard.get(playerId) == null)) {
+                    outsideTimes.put(key, outside);
+                }
+                if (then != null) {
+                    then.run();
+                }
+            });
+        });
+    }
+
+    /**
+     * Look up a player's time and rank ahead of a finish, if they are below the cached places,
+     * so the finish and /leaderboard can answer without waiting on the storage
+     */
+    public void prefetch(String mapName, UUID playerId) {
+        findEntry(mapName, playerId);
     }
 
     /**
@@ -111,49 +237,165 @@ public class LeaderboardManager {
      * @param playerId Player UUID
      * @param playerName Player name
      * @param time Time in milliseconds
-     * @return The player's rank (1-based)
+     * @return The player's rank (1-based), or -1 if it is still being counted
      */
     public int addTime(String mapName, UUID playerId, String playerName, long time) {
-        List<LeaderboardEntry> entries = leaderboards.computeIfAbsent(mapName, k -> new ArrayList<>());
+        long now = System.currentTimeMillis();
+        LeaderboardEntry newEntry = new LeaderboardEntry(playerId, playerName, time, now);
+
+        // Every finish counts for the windows, not just personal bests
+        for (Map.Entry<LeaderboardWindow, Map<String, WindowedLeaderboard>> entry : windows.entrySet()) {
+            entry.getValue().computeIfAbsent(mapName, k -> new WindowedLeaderboard(entry.getKey(), getWindowMaxEntries(), now))
+                    .submit(newEntry);
+            changedWindows.get(entry.getKey()).add(mapName);
+        }
+        markWindowsDirty();
+
+        histograms.computeIfAbsent(mapName, k -> new CompletionHistogram()).record(time);
+        changedHistograms.add(mapName);
+        plugin.getPersistenceService().markDirtySnapshot(histogramsFile, this::snapshotHistograms);
+
+        return recordTime(mapName, newEntry);
+    }
 
-        // Check if player already has a time
-        LeaderboardEntry existingEntry = null;
-        for (LeaderboardEntry entry : entries) {
-            if (entry.getPlayerId().equals(playerId)) {
-                existingEntry = entry;
-                break;
+    /**
+     * Keep a time if it is the player's personal best
+     * @return The player's rank (1-based), or -1 if it is still being counted
+     */
+    private int recordTime(String mapName, LeaderboardEntry newEntry) {
+        UUID playerId = newEntry.getPlayerId();
+        MapLeaderboard leaderboard = leaderboards.get(mapName);
+        LeaderboardEntry previous = leaderboard != null ? leaderboard.get(playerId) : null;
+        if (previous == null && hasOutsideTimes(mapName, leaderboard)) {
+            OutsideTime outside = outsideTimes.get(mapName + "/" + playerId);
+            if (outside == null) {
+                // Not looked up yet, record the time once the storage has answered
+                lookUpOutsideTime(mapName, playerId, () -> recordTime(mapName, newEntry));
+                return -1;
             }
+            return addOutsideTime(mapName, newEntry, outside);
         }
 
-        // Only update if new time is better or player has no time
-        if (existingEntry == null || time < existingEntry.getTime()) {
-            if (existingEntry != null) {
-                entries.remove(existingEntry);
+        if (previous == null || newEntry.getTime() < previous.getTime()) {
+            if (previous == null && cachedPlaces > 0) {
+                playerCounts.merge(mapName, 1, Integer::sum);
             }
+            saveBest(mapName, newEntry, leaderboard != null ? leaderboard.getRank(playerId) : -1);
+        }
 
-            LeaderboardEntry newEntry = new LeaderboardEntry(playerId, playerName, time, System.currentTimeMillis());
-            entries.add(newEntry);
+        return getKnownRank(mapName, playerId);
+    }
 
-            // Sort by time (ascending - lower is better)
-            entries.sort(Comparator.comparingLong(LeaderboardEntry::getTime));
+    /**
+     * Record a finish of a player whose time is below the cached places, or who has none
+     * @param outside The player's time and rank as looked up
+     * @return The player's rank (1-based), or -1 if it is still being counted
+     */
+    private int addOutsideTime(String mapName, LeaderboardEntry newEntry, OutsideTime outside) {
+        UUID playerId = newEntry.getPlayerId();
+        if (outside.entry != null && newEntry.getTime() >= outside.entry.getTime()) {
+            return outside.rank;
+        }
 
-            // Keep only top 100
-            if (entries.size() > 100) {
-                entries = entries.subList(0, 100);
-                leaderboards.put(mapName, entries);
-            }
+        if (outside.entry == null) {
+            playerCounts.merge(mapName, 1, Integer::sum);
+        }
+        outsideTimes.remove(mapName + "/" + playerId);
+        // Anyone below the cached places is below the ranked places too, so -1 is right for them
+        saveBest(mapName, newEntry, -1);
+
+        int rank = getKnownRank(mapName, playerId);
+        if (rank < 1) {
+            // Still below the cached places, count it again once the write has landed
+            lookUpOutsideTime(mapName, playerId, null);
+        }
+        return rank;
+    }
 
-            saveLeaderboards();
+    private void saveBest(String mapName, LeaderboardEntry newEntry, int oldRank) {
+        applyTime(mapName, newEntry);
+        updateGlobalRanking(mapName, newEntry.getPlayerId(), newEntry.getPlayerName(), oldRank);
+        storage.saveTime(mapName, newEntry);
+        if (storage.needsCompaction()) {
+            storage.compact(getAllLeaderboards());
         }
+    }
 
-        // Find player's rank
-        for (int i = 0; i < entries.size(); i++) {
-            if (entries.get(i).getPlayerId().equals(playerId)) {
-                return i + 1; // Return 1-based rank
-            }
+    /**
+     * Get a player's all-time rank from memory only
+     * @return Rank (1-based), or -1 if it is not known
+     */
+    private int getKnownRank(String mapName, UUID playerId) {
+        MapLeaderboard leaderboard = leaderboards.get(mapName);
+        int rank = leaderboard != null ? leaderboard.getRank(playerId) : -1;
+        if (rank > 0) {
+            return rank;
+        }
+
+        OutsideTime outside = outsideTimes.get(mapName + "/" + playerId);
+        return outside != null ? outside.rank : -1;
+    }
+
+    /**
+     * Move points after a player improved on a map. Only the player and the ones they passed
+     * within the ranked places change, so this never looks beyond those places.
+     * @param oldRank The player's rank before the improvement, or -1 if they had none
+     */
+    private void updateGlobalRanking(String mapName, UUID playerId, String playerName, int oldRank) {
+        MapLeaderboard leaderboard = leaderboards.get(mapName);
+        int newRank = leaderboard.getRank(playerId);
+        if (newRank < 1 || newRank > rankedPlaces) {
+            return;
+        }
+
+        globalRanking.addPoints(playerId, playerName, getPoints(newRank) - getPoints(oldRank));
+
+        // Everyone between the new and old rank moved down a place, including whoever fell out of the ranked places
+        int lastMoved = oldRank > 0 ? Math.min(oldRank, rankedPlaces + 1) : rankedPlaces + 1;
+        List<LeaderboardEntry> top = leaderboard.getTop(lastMoved);
+        for (int rank = newRank + 1; rank <= top.size(); rank++) {
+            globalRanking.addPoints(top.get(rank - 1).getPlayerId(), null, getPoints(rank) - getPoints(rank - 1));
         }
+    }
 
-        return -1; // Not found (shouldn't happen)
+    /**
+     * Points for a map rank: the ranked places count down to 1, anything below is worth nothing
+     */
+    private int getPoints(int rank) {
+        return rank >= 1 && rank <= rankedPlaces ? rankedPlaces + 1 - rank : 0;
+    }
+
+    /**
+     * Get the players with the most points across all maps
+     * @param limit Maximum number of entries
+     * @return Entries, best first
+     */
+    public List<GlobalRankEntry> getGlobalTop(int limit) {
+        return globalRanking.getTop(limit);
+    }
+
+    /**
+     * Get a player's rank across all maps
+     * @return Rank (1-based), or -1 if the player has no points
+     */
+    public int getGlobalRank(UUID playerId) {
+        return globalRanking.getRank(playerId);
+    }
+
+    /**
+     * Get a player's points across all maps
+     * @return Points, 0 if the player is not in any map's ranked places
+     */
+    public long getGlobalPoints(UUID playerId) {
+        GlobalRankEntry entry = globalRanking.get(playerId);
+        return entry != null ? entry.getPoints() : 0;
+    }
+
+    /**
+     * Get the global ranking's change counter
+     */
+    public long getGlobalVersion() {
+        return globalRanking.getVersion();
     }
 
     /**
@@ -163,15 +405,20 @@ public class LeaderboardManager {
      * @return List of top entries
      */
     public List<LeaderboardEntry> getTopTimes(String mapName, int limit) {
-        List<LeaderboardEntry> entries = leaderboards.get(mapName);
-
-        if (entries == null || entries.isEmpty()) {
-            return new ArrayList<>();
-        }
+        return getTopTimes(mapName, null, limit);
+    }
 
-        return entries.stream()
-                .limit(limit)
-                .collect(Collectors.toList());
+    /**
+     * Get top N entries for a map within a time window. With SQLite storage, all-time
+     * leaderboards only go as deep as storage.sqlite.cached-places.
+     * @param mapName The map name
+     * @param window The window, or null for all time
+     * @param limit Maximum number of entries
+     * @return List of top entries
+     */
+    public List<LeaderboardEntry> getTopTimes(String mapName, LeaderboardWindow window, int limit) {
+        MapLeaderboard leaderboard = getLeaderboard(mapName, window);
+        return leaderboard != null ? leaderboard.getTop(limit) : new ArrayList<>();
     }
 
     /**
@@ -181,19 +428,25 @@ public class LeaderboardManager {
      * @return Time in milliseconds, or -1 if not found
      */
     public long getPlayerTime(String mapName, UUID playerId) {
-        List<LeaderboardEntry> entries = leaderboards.get(mapName);
-
-        if (entries == null) {
-            return -1;
-        }
+        return getPlayerTime(mapName, null, playerId);
+    }
 
-        for (LeaderboardEntry entry : entries) {
-            if (entry.getPlayerId().equals(playerId)) {
-                return entry.getTime();
-            }
+    /**
+     * Get a player's best time for a map within a time window
+     * @param mapName The map name
+     * @param window The window, or null for all time
+     * @param playerId Player UUID
+     * @return Time in milliseconds, or -1 if not found
+     */
+    public long getPlayerTime(String mapName, LeaderboardWindow window, UUID playerId) {
+        LeaderboardEntry entry;
+        if (window == null) {
+            entry = findEntry(mapName, playerId);
+        } else {
+            MapLeaderboard leaderboard = getLeaderboard(mapName, window);
+            entry = leaderboard != null ? leaderboard.get(playerId) : null;
         }
-
-        return -1;
+        return entry != null ? entry.getTime() : -1;
     }
 
     /**
@@ -203,26 +456,340 @@ public class LeaderboardManager {
      * @return Rank (1-based), or -1 if not found
      */
     public int getPlayerRank(String mapName, UUID playerId) {
-        List<LeaderboardEntry> entries = leaderboards.get(mapName);
+        return getPlayerRank(mapName, null, playerId);
+    }
 
-        if (entries == null) {
-            return -1;
+    /**
+     * Get a player's rank for a map within a time window. Windows only keep the top
+     * leaderboard-windows.max-entries of each bucket, so slower players may be unranked.
+     * @param mapName The map name
+     * @param window The window, or null for all time
+     * @param playerId Player UUID
+     * @return Rank (1-based), or -1 if not found or still being counted
+     */
+    public int getPlayerRank(String mapName, LeaderboardWindow window, UUID playerId) {
+        MapLeaderboard leaderboard = getLeaderboard(mapName, window);
+        int rank = leaderboard != null ? leaderboard.getRank(playerId) : -1;
+        if (rank > 0 || window != null || !hasOutsideTimes(mapName, leaderboard)) {
+            return rank;
         }
 
-        for (int i = 0; i < entries.size(); i++) {
-            if (entries.get(i).getPlayerId().equals(playerId)) {
-                return i + 1;
-            }
+        // Below the cached places, the storage counted who is faster on the writer thread
+        OutsideTime outside = getOutsideTime(mapName, playerId);
+        return outside != null ? outside.rank : -1;
+    }
+
+    /**
+     * Get a map's change counter, so callers can tell if something they derived from it is stale
+     * @param mapName The map name
+     * @return The counter, 0 if the map has no times
+     */
+    public long getVersion(String mapName) {
+        return getVersion(mapName, null);
+    }
+
+    /**
+     * Get a map's change counter, so callers can tell if something they derived from it is stale
+     * @param mapName The map name
+     * @param window The window, or null for all time
+     * @return The counter, 0 if the map has no times
+     */
+    public long getVersion(String mapName, LeaderboardWindow window) {
+        MapLeaderboard leaderboard = getLeaderboard(mapName, window);
+        return leaderboard != null ? leaderboard.getVersion() : 0;
+    }
+
+    private MapLeaderboard getLeaderboard(String mapName, LeaderboardWindow window) {
+        if (window == null) {
+            return leaderboards.get(mapName);
+        }
+
+        WindowedLeaderboard windowed = windows.get(window).get(mapName);
+        return windowed != null ? windowed.getCombined() : null;
+    }
+
+    /**
+     * Get the number of players with a time on a map
+     */
+    public int getPlayerCount(String mapName) {
+        if (cachedPlaces > 0) {
+            return playerCounts.getOrDefault(mapName, 0);
         }
 
-        return -1;
+        MapLeaderboard leaderboard = leaderboards.get(mapName);
+        return leaderboard != null ? leaderboard.size() : 0;
+    }
+
+    /**
+     * Get the number of finishes recorded on a map, including ones that were not personal bests
+     */
+    public long getCompletionCount(String mapName) {
+        CompletionHistogram histogram = histograms.get(mapName);
+        return histogram != null ? histogram.getTotalCount() : 0;
+    }
+
+    /**
+     * Get the share of all finishes on a map that were slower than a time
+     * @param mapName The map name
+     * @param time Time in milliseconds
+     * @return Percentage between 0 and 100, or 0 if the map has no finishes
+     */
+    public double getPercentSlowerThan(String mapName, long time) {
+        CompletionHistogram histogram = histograms.get(mapName);
+        return histogram != null ? histogram.getPercentSlowerThan(time) : 0;
     }
 
     /**
-     * Get all leaderboards
+     * Get the time that a percentage of finishes on a map were at or below, e.g. 90 for p90.
+     * Accurate to about 3%.
+     * @param mapName The map name
+     * @param percentile Percentile between 0 and 100
+     * @return Time in milliseconds, or -1 if the map has no finishes
+     */
+    public long getTimeAtPercentile(String mapName, double percentile) {
+        CompletionHistogram histogram = histograms.get(mapName);
+        return histogram != null ? histogram.getTimeAtPercentile(percentile) : -1;
+    }
+
+    /**
+     * Get all leaderboards. This copies every entry, so prefer the per-map queries. With SQLite
+     * storage only the cached places of each map are included.
      * @return Map of map name to leaderboard entries
      */
     public Map<String, List<LeaderboardEntry>> getAllLeaderboards() {
-        return new HashMap<>(leaderboards);
+        Map<String, List<LeaderboardEntry>> all = new HashMap<>();
+        for (Map.Entry<String, MapLeaderboard> entry : leaderboards.entrySet()) {
+            all.put(entry.getKey(), entry.getValue().getEntries());
+        }
+        return all;
+    }
+
+    /**
+     * Drop expired buckets and forget maps with nothing left in a window
+     */
+    private void rotateWindows() {
+        long now = System.currentTimeMillis();
+        boolean changed = false;
+
+        for (Map.Entry<LeaderboardWindow, Map<String, WindowedLeaderboard>> window : windows.entrySet()) {
+            Set<String> changedMaps = changedWindows.get(window.getKey());
+            Iterator<Map.Entry<String, WindowedLeaderboard>> iterator = window.getValue().entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, WindowedLeaderboard> map = iterator.next();
+                WindowedLeaderboard leaderboard = map.getValue();
+                long version = leaderboard.getCombined().getVersion();
+                leaderboard.advance(now);
+
+                if (leaderboard.isEmpty()) {
+                    iterator.remove();
+                    changedMaps.add(map.getKey());
+                    changed = true;
+                } else if (leaderboard.getCombined().getVersion() != version) {
+                    changedMaps.add(map.getKey());
+                    changed = true;
+                }
+            }
+        }
+
+        if (changed) {
+            markWindowsDirty();
+        }
+    }
+
+    private int getWindowMaxEntries() {
+        return Math.max(10, plugin.getConfig().getInt("leaderboard-windows.max-entries", 1000));
+    }
+
+    private void markWindowsDirty() {
+        plugin.getPersistenceService().markDirtySnapshot(windowsFile, this::snapshotWindows);
+    }
+
+    /**
+     * Copy the maps that changed since the last flush; everything else is reused as encoded before
+     * @return Encodes the changes and the whole file on the writer thread
+     */
+    private Supplier<byte[]> snapshotWindows() {
+        Map<LeaderboardWindow, Map<String, WindowedLeaderboard.Snapshot>> changes = new EnumMap<>(LeaderboardWindow.class);
+        for (Map.Entry<LeaderboardWindow, Set<String>> window : changedWindows.entrySet()) {
+            Map<String, WindowedLeaderboard.Snapshot> snapshots = new HashMap<>();
+            for (String mapName : window.getValue()) {
+                WindowedLeaderboard leaderboard = windows.get(window.getKey()).get(mapName);
+                // null for a map with nothing left in the window
+                snapshots.put(mapName, leaderboard != null ? leaderboard.snapshot() : null);
+            }
+            window.getValue().clear();
+            changes.put(window.getKey(), snapshots);
+        }
+
+        return () -> encodeWindows(changes);
+    }
+
+    private byte[] encodeWindows(Map<LeaderboardWindow, Map<String, WindowedLeaderboard.Snapshot>> changes) {
+        for (Map.Entry<LeaderboardWindow, Map<String, WindowedLeaderboard.Snapshot>> window : changes.entrySet()) {
+            Map<String, byte[]> encoded = encodedWindows.get(window.getKey());
+            for (Map.Entry<String, WindowedLeaderboard.Snapshot> map : window.getValue().entrySet()) {
+                if (map.getValue() == null) {
+                    encoded.remove(map.getKey());
+                } else {
+                    encoded.put(map.getKey(), encodeWindow(map.getValue()));
+                }
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(WINDOWS_FORMAT);
+            out.writeInt(encodedWindows.size());
+            for (Map.Entry<LeaderboardWindow, Map<String, byte[]>> window : encodedWindows.entrySet()) {
+                out.writeUTF(window.getKey().name());
+                out.writeInt(window.getValue().size());
+                for (Map.Entry<String, byte[]> map : window.getValue().entrySet()) {
+                    out.writeUTF(map.getKey());
+                    out.write(map.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeWindow(WindowedLeaderboard.Snapshot snapshot) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            snapshot.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void loadWindows() {
+        if (!windowsFile.exists()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        int maxEntries = getWindowMaxEntries();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(windowsFile))))) {
+            if (in.readInt() != WINDOWS_FORMAT) {
+                plugin.getLogger().warning("Unknown leaderboard-windows.dat format, starting windows empty");
+                return;
+            }
+
+            int windowCount = in.readInt();
+            for (int i = 0; i < windowCount; i++) {
+                LeaderboardWindow window = LeaderboardWindow.valueOf(in.readUTF());
+                int mapCount = in.readInt();
+                for (int j = 0; j < mapCount; j++) {
+                    String mapName = in.readUTF();
+                    WindowedLeaderboard leaderboard = WindowedLeaderboard.read(in, window, maxEntries, now);
+                    if (!leaderboard.isEmpty()) {
+                        windows.get(window).put(mapName, leaderboard);
+                        // Nothing is queued for the writer thread yet, so this is safe to fill here
+                        encodedWindows.get(window).put(mapName, encodeWindow(leaderboard.snapshot()));
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            plugin.getLogger().warning("Could not read leaderboard-windows.dat, starting windows empty: " + e.getMessage());
+            for (Map<String, WindowedLeaderboard> maps : windows.values()) {
+                maps.clear();
+            }
+            for (Map<String, byte[]> maps : encodedWindows.values()) {
+                maps.clear();
+            }
+        }
+    }
+
+    /**
+     * Copy the counts of the histograms that changed since the last flush
+     * @return Encodes the changes and the whole file on the writer thread
+     */
+    private Supplier<byte[]> snapshotHistograms() {
+        Map<String, long[]> changes = new HashMap<>();
+        for (String mapName : changedHistograms) {
+            changes.put(mapName, histograms.get(mapName).snapshot());
+        }
+        changedHistograms.clear();
+
+        return () -> encodeHistograms(changes);
+    }
+
+    private byte[] encodeHistograms(Map<String, long[]> changes) {
+        for (Map.Entry<String, long[]> map : changes.entrySet()) {
+            encodedHistograms.put(map.getKey(), encodeHistogram(map.getValue()));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(HISTOGRAMS_FORMAT);
+            out.writeInt(encodedHistograms.size());
+            for (Map.Entry<String, byte[]> map : encodedHistograms.entrySet()) {
+                out.writeUTF(map.getKey());
+                out.write(map.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeHistogram(long[] counts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            CompletionHistogram.write(out, counts);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void loadHistograms() {
+        if (!histogramsFile.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(histogramsFile))))) {
+            if (in.readInt() != HISTOGRAMS_FORMAT) {
+                plugin.getLogger().warning("Unknown leaderboard-histograms.dat format, starting histograms empty");
+                return;
+            }
+
+            int mapCount = in.readInt();
+            for (int i = 0; i < mapCount; i++) {
+                String mapName = in.readUTF();
+                CompletionHistogram histogram = CompletionHistogram.read(in);
+                histograms.put(mapName, histogram);
+                // Nothing is queued for the writer thread yet, so this is safe to fill here
+                encodedHistograms.put(mapName, encodeHistogram(histogram.snapshot()));
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not read leaderboard-histograms.dat, starting histograms empty: " + e.getMessage());
+            histograms.clear();
+            encodedHistograms.clear();
+        }
+    }
+
+    /**
+     * Close the storage, queueing any pending writes
+     */
+    public void shutdown() {
+        rotationTask.cancel();
+        storage.close();
+    }
+
+    /**
+     * A player's all-time time and rank below the cached places. The rank is counted when the
+     * time is looked up, so it may fall behind as others improve.
+     */
+    private static class OutsideTime {
+        private final LeaderboardEntry entry; // null if the player has no time
+        private final int rank; // -1 if the player has no time or it is not counted yet
+
+        private OutsideTime(LeaderboardEntry entry, int rank) {
+            this.entry = entry;
+            this.rank = rank;
+        }
     }
-}
\ No newline at end of file
+}
@@ -3,10 +3,14 @@ package com.stufy.fragmc.icedspear.managers;
 import com.stufy.fragmc.icedspear.IcedSpear;
 import com.stufy.fragmc.icedspear.models.MapInstance;
 import com.stufy.fragmc.icedspear.models.MapState;
+import com.stufy.fragmc.icedspear.models.Plot;
+import com.stufy.fragmc.icedspear.models.SchematicMetadata;
+import net.md_5.bungee.api.ChatMessageType;
+import net.md_5.bungee.api.chat.TextComponent;
 import org.bukkit.*;
 import org.bukkit.entity.Player;
-import org.bukkit.block.Block;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class MapManager {
@@ -15,6 +19,13 @@ public class MapManager {
     private final ConfigManager configManager;
     private final Map<String, MapInstance> activeInstances;
     private final Map<UUID, String> playerToInstance;
+    private final InstancePool instancePool;
+    private final WorldTemplateManager worldTemplateManager;
+    private final PlotAllocator plotAllocator;
+    private final WorldDeletionService worldDeletionService;
+
+    // Pastes still running, so destroying an instance can stop its paste
+    private final Map<MapInstance, CompletableFuture<Boolean>> activePastes;
 
     public MapManager(IcedSpear plugin, SchematicManager schematicManager, ConfigManager configManager) {
         this.plugin = plugin;
@@ -22,6 +33,17 @@ public class MapManager {
         this.configManager = configManager;
         this.activeInstances = new ConcurrentHashMap<>();
         this.playerToInstance = new ConcurrentHashMap<>();
+        this.activePastes = new ConcurrentHashMap<>();
+        this.worldDeletionService = new WorldDeletionService(plugin, configManager);
+        this.instancePool = new InstancePool(plugin, this, configManager);
+        this.worldTemplateManager = new WorldTemplateManager(plugin, this, schematicManager, configManager);
+        this.plotAllocator = new PlotAllocator(plugin, this, configManager);
+
+        if (configManager.isWorldCleanupSweepEnabled()) {
+            worldDeletionService.sweepLeftoverWorlds(PlotAllocator.PLOT_WORLD_PREFIX, WorldTemplateManager.TEMPLATE_WORLD_PREFIX);
+        }
+
+        instancePool.start();
     }
 
     public String createPublicMap(String mapName) {
@@ -42,6 +64,13 @@ public class MapManager {
     }
 
     public String createPrivateMap(String mapName) {
+        MapInstance pooled = instancePool.claim(mapName);
+        if (pooled != null) {
+            activeInstances.put(pooled.getInstanceId(), pooled);
+            scheduleNoJoinCleanup(pooled);
+            return pooled.getInstanceId();
+        }
+
         String randomCode = generateRandomCode();
         String instanceId = mapName + "_" + randomCode;
 
@@ -59,6 +88,20 @@ public class MapManager {
         String instanceId = mapName + "_party-" + partyCode;
 
         MapInstance instance = new MapInstance(instanceId, mapName, false);
+
+        MapInstance pooled = instancePool.claim(mapName);
+        if (pooled != null) {
+            // Take over the prepared world under the party's instance ID
+            instance.setWorld(pooled.getWorld());
+            instance.setPlot(pooled.getPlot());
+            instance.setSpawnLocation(pooled.getSpawnLocation());
+            instance.setPasteProgress(100);
+            instance.setState(MapState.WAITING);
+            activeInstances.put(instanceId, instance);
+            scheduleNoJoinCleanup(instance);
+            return instanceId;
+        }
+
         activeInstances.put(instanceId, instance);
 
         Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
@@ -68,61 +111,135 @@ public class MapManager {
         return instanceId;
     }
 
+    /**
+     * Start preparing an instance for the pool. It is not registered as active
+     * and has no cleanup scheduled until it is handed out.
+     */
+    MapInstance preparePooledInstance(String mapName) {
+        MapInstance instance = new MapInstance(mapName + "_" + generateRandomCode(), mapName, false);
+        initializeMap(instance, false);
+        return instance;
+    }
+
     private void initializeMap(MapInstance instance) {
+        initializeMap(instance, true);
+    }
+
+    private void initializeMap(MapInstance instance, boolean scheduleCleanup) {
         instance.setState(MapState.CREATING);
 
-        // Create void world
-        Bukkit.getScheduler().runTask(plugin, () -> {
-            boolean worldExists = new java.io.File(Bukkit.getWorldContainer(), instance.getInstanceId()).exists();
-
-            WorldCreator worldCreator = new WorldCreator(instance.getInstanceId());
-            worldCreator.environment(World.Environment.NORMAL);
-            worldCreator.type(WorldType.FLAT);
-            worldCreator.generator(new org.bukkit.generator.ChunkGenerator() {
-                @Override
-                public void generateNoise(org.bukkit.generator.WorldInfo worldInfo,
-                                          Random random, int chunkX, int chunkZ,
-                                          org.bukkit.generator.ChunkGenerator.ChunkData chunkData) {
-                }
+        String schematicName = schematicManager.getSchematicForMap(instance.getMapName());
+        if (plotAllocator.isEnabled()) {
+            // The footprint decides whether a plot can hold the map, and reading it may parse the schematic
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+                SchematicMetadata metadata = schematicName != null ? schematicManager.getMetadata(schematicName) : null;
+                Bukkit.getScheduler().runTask(plugin, () -> createInstancePlot(instance, metadata, scheduleCleanup));
+            });
+            return;
+        }
 
-                @Override
-                public void generateSurface(org.bukkit.generator.WorldInfo worldInfo,
-                                            Random random, int chunkX, int chunkZ,
-                                            org.bukkit.generator.ChunkGenerator.ChunkData chunkData) {
-                }
+        if (worldTemplateManager.isEnabled() && schematicName != null) {
+            // Copy the template's region files first, the world then loads as an existing one
+            worldTemplateManager.copyTemplate(schematicName, instance.getInstanceId()).whenComplete((copied, error) ->
+                    Bukkit.getScheduler().runTask(plugin, () -> createInstanceWorld(instance, scheduleCleanup)));
+            return;
+        }
 
-                @Override
-                public boolean shouldGenerateNoise() { return false; }
-                @Override
-                public boolean shouldGenerateSurface() { return false; }
-                @Override
-                public boolean shouldGenerateCaves() { return false; }
-                @Override
-                public boolean shouldGenerateDecorations() { return false; }
-                @Override
-                public boolean shouldGenerateMobs() { return false; }
-                @Override
-                public boolean shouldGenerateStructures() { return false; }
-            });
+        Bukkit.getScheduler().runTask(plugin, () -> createInstanceWorld(instance, scheduleCleanup));
+    }
+
+    /**
+     * Create or load an empty void world
+     * @param worldName The world name
+     * @return The world, or null if it could not be created
+     */
+    World createVoidWorld(String worldName) {
+        WorldCreator worldCreator = new WorldCreator(worldName);
+        worldCreator.environment(World.Environment.NORMAL);
+        worldCreator.type(WorldType.FLAT);
+        worldCreator.generator(new org.bukkit.generator.ChunkGenerator() {
+            @Override
+            public void generateNoise(org.bukkit.generator.WorldInfo worldInfo,
+                                      Random random, int chunkX, int chunkZ,
+                                      org.bukkit.generator.ChunkGenerator.ChunkData chunkData) {
+            }
 
-            World world = worldCreator.createWorld();
-            if (world != null) {
-                instance.setWorld(world);
+            @Override
+            public void generateSurface(org.bukkit.generator.WorldInfo worldInfo,
+                                        Random random, int chunkX, int chunkZ,
+                                        org.bukkit.generator.ChunkGenerator.ChunkData chunkData) {
+            }
 
-                // Apply all world settings from config
-                configManager.applyWorldSettings(world);
+            @Override
+            public boolean shouldGenerateNoise() { return false; }
+            @Override
+            public boolean shouldGenerateSurface() { return false; }
+            @Override
+            public boolean shouldGenerateCaves() { return false; }
+            @Override
+            public boolean shouldGenerateDecorations() { return false; }
+            @Override
+            public boolean shouldGenerateMobs() { return false; }
+            @Override
+            public boolean shouldGenerateStructures() { return false; }
+        });
 
-                if (!worldExists) {
-                    pasteSchematic(instance);
-                } else {
-                    plugin.getLogger().info("Map world " + instance.getInstanceId() + " already exists. Skipping schematic paste.");
-                    scanForGoldBlock(instance, new Location(world, 0, 100, 0));
-                }
+        return worldCreator.createWorld();
+    }
+
+    private void createInstancePlot(MapInstance instance, SchematicMetadata metadata, boolean scheduleCleanup) {
+        if (metadata != null && !plotAllocator.fits(metadata)) {
+            plugin.getLogger().warning("Map " + instance.getMapName() + " is " + metadata.getWidth() + "x" + metadata.getLength()
+                    + " blocks, wider than plots.spacing, creating a dedicated world for " + instance.getInstanceId() + " instead.");
+            createInstanceWorld(instance, scheduleCleanup);
+            return;
+        }
+
+        Plot plot = plotAllocator.allocate();
+        if (plot == null) {
+            plugin.getLogger().warning("No free plot for " + instance.getInstanceId() + ", creating a dedicated world instead.");
+            createInstanceWorld(instance, scheduleCleanup);
+            return;
+        }
+
+        instance.setWorld(plot.getWorld());
+        instance.setPlot(plot);
+
+        pasteSchematic(instance);
+
+        if (scheduleCleanup) {
+            scheduleNoJoinCleanup(instance);
+        }
+    }
+
+    private void createInstanceWorld(MapInstance instance, boolean scheduleCleanup) {
+        boolean worldExists = new java.io.File(Bukkit.getWorldContainer(), instance.getInstanceId()).exists();
+
+        World world = createVoidWorld(instance.getInstanceId());
+        if (world != null) {
+            instance.setWorld(world);
+
+            if (!instance.isPublic()) {
+                worldDeletionService.markInstanceWorld(world.getWorldFolder());
+            }
+
+            // Apply all world settings from config
+            configManager.applyWorldSettings(world);
+
+            if (!worldExists) {
+                pasteSchematic(instance);
+            } else {
+                plugin.getLogger().info("Map world " + instance.getInstanceId() + " already exists. Skipping schematic paste.");
+                setupSpawn(instance, new Location(world, 0, 100, 0));
+            }
 
-                // Schedule cleanup if no one joins within the configured time
+            // Schedule cleanup if no one joins within the configured time
+            if (scheduleCleanup) {
                 scheduleNoJoinCleanup(instance);
             }
-        });
+        } else {
+            instance.setState(MapState.ERROR);
+        }
     }
 
     private void scheduleNoJoinCleanup(MapInstance instance) {
@@ -151,110 +268,115 @@ public class MapManager {
 
         plugin.getLogger().info("Pasting schematic: " + schematicName + " for map: " + instance.getMapName());
 
-        Location pasteLocation = new Location(instance.getWorld(), 0, 100, 0);
+        Plot plot = instance.getPlot();
+        Location pasteLocation = plot != null ? plot.getPasteLocation() : new Location(instance.getWorld(), 0, 100, 0);
 
-        boolean success = schematicManager.pasteSchematic(schematicName, pasteLocation);
+        CompletableFuture<Boolean> paste = schematicManager.pasteSchematic(schematicName, pasteLocation,
+                percent -> updatePasteProgress(instance, percent));
+        activePastes.put(instance, paste);
 
-        if (success) {
-            plugin.getLogger().info("Schematic pasted successfully, scanning for gold block...");
-            scanForGoldBlock(instance, pasteLocation);
-        } else {
-            plugin.getLogger().severe("Failed to paste schematic for map: " + instance.getMapName());
-            instance.setState(MapState.ERROR);
-        }
-    }
+        paste.whenComplete((success, error) -> {
+            activePastes.remove(instance, paste);
 
-    private void scanForGoldBlock(MapInstance instance, Location pasteLocation) {
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            Location goldBlockLocation = null;
-            World world = instance.getWorld();
+            if (plot != null) {
+                // Remember what was pasted so the plot can be cleared even if the schematic changes later.
+                // Metadata is cached before any block is placed, so no metadata means nothing was pasted.
+                SchematicMetadata metadata = schematicManager.getCachedMetadata(schematicName);
+                plot.setPastedBounds(metadata != null ? metadata.getBounds(pasteLocation) : null);
+            }
 
-            String schematicName = schematicManager.getSchematicForMap(instance.getMapName());
-            org.bukkit.util.BoundingBox bounds = schematicManager.getSchematicBounds(schematicName, pasteLocation);
-
-            if (bounds != null) {
-                plugin.getLogger().info("Scanning schematic bounds for gold block: " + bounds.toString());
-
-                int minX = (int) bounds.getMinX();
-                int maxX = (int) bounds.getMaxX();
-                int minY = (int) Math.max(world.getMinHeight(), bounds.getMinY());
-                int maxY = (int) Math.min(world.getMaxHeight(), bounds.getMaxY());
-                int minZ = (int) bounds.getMinZ();
-                int maxZ = (int) bounds.getMaxZ();
-
-                outerLoop: for (int x = minX; x <= maxX; x++) {
-                    for (int z = minZ; z <= maxZ; z++) {
-                        for (int y = minY; y <= maxY; y++) {
-                            Location checkLoc = new Location(world, x, y, z);
-                            Block block = world.getBlockAt(checkLoc);
-
-                            if (block.getType() == Material.GOLD_BLOCK) {
-                                goldBlockLocation = checkLoc.add(0.5, 1, 0.5);
-                                plugin.getLogger().info("Found gold block at: X=" + goldBlockLocation.getBlockX() +
-                                        " Y=" + goldBlockLocation.getBlockY() +
-                                        " Z=" + goldBlockLocation.getBlockZ());
-                                break outerLoop;
-                            }
-                        }
-                    }
-                }
+            if (error != null) {
+                return; // Cancelled because the instance is being destroyed
+            }
+
+            if (success) {
+                plugin.getLogger().info("Schematic pasted successfully, setting up spawn...");
+                setupSpawn(instance, pasteLocation);
             } else {
-                plugin.getLogger().warning("Could not determine schematic bounds for gold block scan.");
+                plugin.getLogger().severe("Failed to paste schematic for map: " + instance.getMapName());
+                instance.setState(MapState.ERROR);
             }
+        });
+    }
+
+    private void updatePasteProgress(MapInstance instance, int percent) {
+        instance.setPasteProgress(percent);
 
-            if (goldBlockLocation == null) {
-                plugin.getLogger().warning("No gold block found in schematic! Using default spawn location.");
+        for (UUID playerId : instance.getWaitingPlayers()) {
+            Player player = Bukkit.getPlayer(playerId);
+            if (player != null && player.isOnline()) {
+                player.spigot().sendMessage(ChatMessageType.ACTION_BAR,
+                        new TextComponent(ChatColor.YELLOW + "Preparing " + instance.getMapName() + "... " + percent + "%"));
             }
+        }
+    }
 
-            Location finalGoldLocation = goldBlockLocation != null ? goldBlockLocation : pasteLocation.clone().add(0, 1, 0);
+    private void setupSpawn(MapInstance instance, Location pasteLocation) {
+        String schematicName = schematicManager.getSchematicForMap(instance.getMapName());
 
-            Bukkit.getScheduler().runTask(plugin, () -> {
-                instance.setSpawnLocation(finalGoldLocation);
-                plugin.getLogger().info("Map ready! Spawn set at: X=" + finalGoldLocation.getBlockX() +
-                        " Y=" + finalGoldLocation.getBlockY() +
-                        " Z=" + finalGoldLocation.getBlockZ());
-                instance.setState(MapState.WAITING);
-
-                // Teleport waiting players
-                for (UUID playerId : instance.getWaitingPlayers()) {
-                    Player player = Bukkit.getPlayer(playerId);
-                    if (player != null && player.isOnline()) {
-                        if (!configManager.canPlayerJoinMap(player, instance.getMapName())) {
-                            player.sendMessage(ChatColor.RED + "You don't have permission to join this map!");
-                            continue;
-                        }
+        // Spawn comes from the schematic's cached metadata, so the world itself is never scanned
+        SchematicMetadata metadata = schematicName != null ? schematicManager.getCachedMetadata(schematicName) : null;
+        if (metadata != null || schematicName == null) {
+            markReady(instance, metadata != null ? metadata.getSpawnLocation(pasteLocation) : pasteLocation.clone().add(0, 1, 0));
+            return;
+        }
 
-                        if (instance.getPlayers().size() >= configManager.getMaxPlayers()) {
-                            player.sendMessage(ChatColor.RED + "Map is full!");
-                            continue;
-                        }
+        // Not scanned yet (e.g. the world was copied or already existed), parse it off the main thread
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            SchematicMetadata scanned = schematicManager.getMetadata(schematicName);
+            Location spawnLocation = scanned != null ? scanned.getSpawnLocation(pasteLocation) : pasteLocation.clone().add(0, 1, 0);
+
+            Bukkit.getScheduler().runTask(plugin, () -> markReady(instance, spawnLocation));
+        });
+    }
+
+    private void markReady(MapInstance instance, Location spawnLocation) {
+        instance.setSpawnLocation(spawnLocation);
+        instance.setPasteProgress(100);
+        plugin.getLogger().info("Map ready! Spawn set at: X=" + spawnLocation.getBlockX() +
+                " Y=" + spawnLocation.getBlockY() +
+                " Z=" + spawnLocation.getBlockZ());
+        instance.setState(MapState.WAITING);
+
+        // Teleport waiting players
+        for (UUID playerId : instance.getWaitingPlayers()) {
+            Player player = Bukkit.getPlayer(playerId);
+            if (player != null && player.isOnline()) {
+                if (!configManager.canPlayerJoinMap(player, instance.getMapName())) {
+                    player.sendMessage(ChatColor.RED + "You don't have permission to join this map!");
+                    continue;
+                }
 
-                        instance.addPlayer(playerId);
-                        playerToInstance.put(playerId, instance.getInstanceId());
-
-                        try {
-                            player.teleportAsync(finalGoldLocation).thenAccept(success -> {
-                                if (success) {
-                                    player.setGameMode(configManager.getDefaultGameMode());
-                                    player.sendMessage(ChatColor.GREEN + "Map is ready! Welcome to " + instance.getMapName() + "!");
-                                    configManager.executeOnJoinCommands(player);
-                                }
-                            });
-                        } catch (NoSuchMethodError e) {
-                            player.teleport(finalGoldLocation);
+                if (instance.getPlayers().size() >= configManager.getMaxPlayers()) {
+                    player.sendMessage(ChatColor.RED + "Map is full!");
+                    continue;
+                }
+
+                instance.addPlayer(playerId);
+                playerToInstance.put(playerId, instance.getInstanceId());
+                startRunSession(playerId, instance);
+
+                try {
+                    player.teleportAsync(spawnLocation).thenAccept(success -> {
+                        if (success) {
                             player.setGameMode(configManager.getDefaultGameMode());
                             player.sendMessage(ChatColor.GREEN + "Map is ready! Welcome to " + instance.getMapName() + "!");
                             configManager.executeOnJoinCommands(player);
                         }
-                    }
+                    });
+                } catch (NoSuchMethodError e) {
+                    player.teleport(spawnLocation);
+                    player.setGameMode(configManager.getDefaultGameMode());
+                    player.sendMessage(ChatColor.GREEN + "Map is ready! Welcome to " + instance.getMapName() + "!");
+                    configManager.executeOnJoinCommands(player);
                 }
-                instance.clearWaitingPlayers();
+            }
+        }
+        instance.clearWaitingPlayers();
 
-                if (!instance.getPlayers().isEmpty()) {
-                    instance.setState(MapState.RUNNING);
-                }
-            });
-        });
+        if (!instance.getPlayers().isEmpty()) {
+            instance.setState(MapState.RUNNING);
+        }
     }
 
     public boolean joinMap(Player player, String instanceId) {
@@ -292,6 +414,7 @@ public class MapManager {
 
         instance.addPlayer(player.getUniqueId());
         playerToInstance.put(player.getUniqueId(), instanceId);
+        startRunSession(player.getUniqueId(), instance);
 
         try {
             player.teleportAsync(instance.getSpawnLocation()).thenAccept(success -> {
@@ -315,6 +438,12 @@ public class MapManager {
         return true;
     }
 
+    private void startRunSession(UUID playerId, MapInstance instance) {
+        if (plugin.getTimerManager() != null) {
+            plugin.getTimerManager().startSession(playerId, instance);
+        }
+    }
+
     public void leaveMap(Player player) {
         String instanceId = playerToInstance.remove(player.getUniqueId());
 
@@ -372,7 +501,23 @@ public class MapManager {
     private void destroyMap(String instanceId) {
         MapInstance instance = activeInstances.remove(instanceId);
 
-        if (instance != null && instance.getWorld() != null) {
+        if (instance != null) {
+            destroyInstance(instance);
+        }
+    }
+
+    void destroyInstance(MapInstance instance) {
+        CompletableFuture<Boolean> paste = activePastes.remove(instance);
+        if (paste != null) {
+            paste.cancel(false);
+        }
+
+        if (instance.getPlot() != null) {
+            destroyPlot(instance);
+            return;
+        }
+
+        if (instance.getWorld() != null) {
             instance.setState(MapState.DESTROYING);
 
             World world = instance.getWorld();
@@ -390,17 +535,8 @@ public class MapManager {
                 if (unloaded) {
                     plugin.getLogger().info("World unloaded: " + worldName);
 
-                    Bukkit.getScheduler().runTaskLater(plugin, () -> {
-                        java.io.File worldFolder = new java.io.File(Bukkit.getWorldContainer(), worldName);
-                        if (worldFolder.exists()) {
-                            boolean deleted = deleteFolder(worldFolder);
-                            if (deleted) {
-                                plugin.getLogger().info("World folder deleted: " + worldName);
-                            } else {
-                                plugin.getLogger().warning("Failed to delete world folder: " + worldName);
-                            }
-                        }
-                    }, 40L);
+                    // Deleted off the main thread; the delay lets the server release region files
+                    worldDeletionService.deleteWorldFolder(new java.io.File(Bukkit.getWorldContainer(), worldName), 2000L);
                 } else {
                     plugin.getLogger().warning("Failed to unload world: " + worldName);
                 }
@@ -408,21 +544,36 @@ public class MapManager {
         }
     }
 
-    private boolean deleteFolder(java.io.File folder) {
-        if (folder.exists()) {
-            java.io.File[] files = folder.listFiles();
-            if (files != null) {
-                for (java.io.File file : files) {
-                    if (file.isDirectory()) {
-                        deleteFolder(file);
-                    } else {
-                        file.delete();
-                    }
+    private void destroyPlot(MapInstance instance) {
+        instance.setState(MapState.DESTROYING);
+        Plot plot = instance.getPlot();
+
+        plugin.getLogger().info("Clearing plot " + plot.getIndex() + " in " + plot.getWorld().getName() + " for " + instance.getInstanceId());
+
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            Location spawnLoc = Bukkit.getWorlds().get(0).getSpawnLocation();
+            for (UUID playerId : instance.getPlayers()) {
+                Player p = Bukkit.getPlayer(playerId);
+                if (p != null && p.getWorld().equals(plot.getWorld())) {
+                    p.teleport(spawnLoc);
                 }
             }
-            return folder.delete();
-        }
-        return false;
+
+            if (plot.getPastedBounds() == null) {
+                plotAllocator.free(plot);
+                return;
+            }
+
+            // Cleared over several ticks, the plot is only handed out again once it is empty
+            schematicManager.clearRegion(plot.getWorld(), plot.getPastedBounds()).whenComplete((cleared, error) -> {
+                if (error == null && cleared) {
+                    plotAllocator.free(plot);
+                } else {
+                    plugin.getLogger().warning("Plot " + plot.getIndex() + " in " + plot.getWorld().getName()
+                            + " could not be cleared and stays reserved.");
+                }
+            });
+        });
     }
 
     public MapInstance getInstance(String instanceId) {
@@ -437,12 +588,29 @@ public class MapManager {
         return new HashMap<>(activeInstances);
     }
 
+    public WorldTemplateManager getWorldTemplateManager() {
+        return worldTemplateManager;
+    }
+
+    public WorldDeletionService getWorldDeletionService() {
+        return worldDeletionService;
+    }
+
+    public InstancePool getInstancePool() {
+        return instancePool;
+    }
+
     public void cleanup() {
+        instancePool.shutdown();
+        schematicManager.getPasteScheduler().shutdown();
+
         for (String instanceId : new ArrayList<>(activeInstances.keySet())) {
             if (!activeInstances.get(instanceId).isPublic()) {
                 destroyMap(instanceId);
             }
         }
+
+        worldDeletionService.shutdown();
     }
 
     private String generateRandomCode() {
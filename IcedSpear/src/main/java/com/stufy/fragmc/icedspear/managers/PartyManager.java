@@ -1,6 +1,8 @@
 package com.stufy.fragmc.icedspear.managers;
 
 import com.stufy.fragmc.icedspear.IcedSpear;
+import com.stufy.fragmc.icedspear.models.MapInstance;
+import com.stufy.fragmc.icedspear.models.MapState;
 import com.stufy.fragmc.icedspear.models.Party;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -204,6 +206,10 @@ public class PartyManager {
         String instanceId = mapManager.createPartyMap(mapName, code);
         party.setCurrentMap(instanceId);
 
+        // Pooled instances are ready straight away
+        MapInstance instance = mapManager.getInstance(instanceId);
+        long delay = instance != null && instance.getState() == MapState.WAITING ? 1L : 100L;
+
         plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
             for (UUID memberId : party.getMembers()) {
                 Player member = plugin.getServer().getPlayer(memberId);
@@ -211,7 +217,7 @@ public class PartyManager {
                     mapManager.joinMap(member, instanceId);
                 }
             }
-        }, 100L);
+        }, delay);
 
         return true;
     }
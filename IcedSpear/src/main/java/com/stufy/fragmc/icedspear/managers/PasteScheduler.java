@@ -0,0 +1,236 @@
+package com.stufy.fragmc.icedspear.managers;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
+
+/**
+ * Spreads schematic pastes over several ticks. Each paste is split into world-aligned
+ * chunk sections, ordered so the sections closest to the spawn are placed first, and all
+ * running pastes share a fixed time budget per tick.
+ */
+public class PasteScheduler {
+    private final IcedSpear plugin;
+    private final Deque<PasteJob> jobs;
+    private BukkitTask task;
+
+    public PasteScheduler(IcedSpear plugin) {
+        this.plugin = plugin;
+        this.jobs = new ArrayDeque<>();
+    }
+
+    /**
+     * Places the blocks of a paste. Coordinates are relative to the schematic's minimum corner,
+     * maximums are exclusive.
+     */
+    interface SectionWriter {
+        void write(int minX, int minY, int minZ, int maxX, int maxY, int maxZ);
+
+        /**
+         * Apply anything buffered, called after every section so the work counts against the tick's budget
+         */
+        default void flush() {
+        }
+
+        /**
+         * Called once after every section has been placed
+         */
+        default void finish() {
+        }
+
+        /**
+         * Called once when the paste is over, whether it completed, failed or was cancelled
+         */
+        default void close() {
+        }
+    }
+
+    /**
+     * Queue a paste. Must be called on the main thread.
+     * @param name Name used in log messages
+     * @param writer Places the blocks
+     * @param baseX World X of the schematic's minimum corner
+     * @param baseY World Y of the schematic's minimum corner
+     * @param baseZ World Z of the schematic's minimum corner
+     * @param width Size along X
+     * @param height Size along Y
+     * @param length Size along Z
+     * @param priorityX World X of the block to paste around first
+     * @param priorityY World Y of the block to paste around first
+     * @param priorityZ World Z of the block to paste around first
+     * @param progress Receives the completed percentage whenever it changes, on the main thread
+     * @return Completes on the main thread with true once everything is placed
+     */
+    public CompletableFuture<Boolean> submit(String name, SectionWriter writer, int baseX, int baseY, int baseZ,
+                                             int width, int height, int length,
+                                             int priorityX, int priorityY, int priorityZ, IntConsumer progress) {
+        List<int[]> sections = new ArrayList<>();
+        for (int sectionY = Math.floorDiv(baseY, 16) * 16; sectionY < baseY + height; sectionY += 16) {
+            for (int sectionZ = Math.floorDiv(baseZ, 16) * 16; sectionZ < baseZ + length; sectionZ += 16) {
+                for (int sectionX = Math.floorDiv(baseX, 16) * 16; sectionX < baseX + width; sectionX += 16) {
+                    sections.add(new int[]{
+                            Math.max(sectionX, baseX) - baseX, Math.max(sectionY, baseY) - baseY, Math.max(sectionZ, baseZ) - baseZ,
+                            Math.min(sectionX + 16, baseX + width) - baseX, Math.min(sectionY + 16, baseY + height) - baseY,
+                            Math.min(sectionZ + 16, baseZ + length) - baseZ});
+                }
+            }
+        }
+
+        // Nearest section centre to the priority block first
+        int px = priorityX - baseX, py = priorityY - baseY, pz = priorityZ - baseZ;
+        sections.sort(Comparator.comparingLong(box -> {
+            long dx = box[0] + box[3] - 2L * px;
+            long dy = box[1] + box[4] - 2L * py;
+            long dz = box[2] + box[5] - 2L * pz;
+            return dx * dx + dy * dy + dz * dz;
+        }));
+
+        PasteJob job = new PasteJob(name, writer, sections, progress);
+        jobs.add(job);
+        progress.accept(0);
+
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+        }
+
+        return job.future;
+    }
+
+    private void tick() {
+        long budget = (long) (getBudgetMillis() * 1_000_000L);
+        long start = System.nanoTime();
+        List<PasteJob> touched = new ArrayList<>();
+
+        // One section per job in turn, so concurrent pastes progress evenly
+        while (!jobs.isEmpty() && System.nanoTime() - start < budget) {
+            PasteJob job = jobs.poll();
+            if (job.future.isDone()) {
+                end(job); // Cancelled by the caller
+                continue;
+            }
+            if (!touched.contains(job)) {
+                touched.add(job);
+            }
+
+            try {
+                int[] box = job.sections.get(job.next++);
+                job.writer.write(box[0], box[1], box[2], box[3], box[4], box[5]);
+                // Writers may only buffer in write(); applying happens here, before the budget is checked again
+                job.writer.flush();
+            } catch (Exception e) {
+                plugin.getLogger().severe("Failed to paste " + job.name + ": " + e.getMessage());
+                job.failed = true;
+                continue;
+            }
+
+            if (job.next < job.sections.size()) {
+                jobs.add(job);
+            }
+        }
+
+        for (PasteJob job : touched) {
+            try {
+                if (!job.failed && !job.future.isDone() && job.next >= job.sections.size()) {
+                    job.writer.finish();
+                }
+            } catch (Exception e) {
+                plugin.getLogger().severe("Failed to paste " + job.name + ": " + e.getMessage());
+                job.failed = true;
+                jobs.remove(job);
+            }
+
+            if (job.failed || job.future.isDone()) {
+                job.future.complete(false);
+                if (!jobs.contains(job)) {
+                    end(job);
+                }
+                continue;
+            }
+
+            int percent = job.sections.isEmpty() ? 100 : job.next * 100 / job.sections.size();
+            if (percent != job.lastPercent) {
+                job.lastPercent = percent;
+                job.progress.accept(percent);
+            }
+
+            if (job.next >= job.sections.size()) {
+                plugin.getLogger().info("Pasted " + job.name + " (" + job.sections.size() + " sections) over "
+                        + (System.currentTimeMillis() - job.startedAt) + "ms");
+                job.future.complete(true);
+                end(job);
+            }
+        }
+
+        if (jobs.isEmpty()) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private void end(PasteJob job) {
+        if (job.ended) {
+            return;
+        }
+        job.ended = true;
+
+        try {
+            job.writer.close();
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to clean up paste of " + job.name + ": " + e.getMessage());
+        }
+    }
+
+    private double getBudgetMillis() {
+        return Math.max(0.5, plugin.getConfig().getDouble("paste.max-ms-per-tick", 10.0));
+    }
+
+    public int getQueuedPasteCount() {
+        return jobs.size();
+    }
+
+    /**
+     * Drop every queued paste, failing their futures
+     */
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        for (PasteJob job : jobs) {
+            job.future.complete(false);
+            end(job);
+        }
+        jobs.clear();
+    }
+
+    private static class PasteJob {
+        private final String name;
+        private final SectionWriter writer;
+        private final List<int[]> sections;
+        private final IntConsumer progress;
+        private final CompletableFuture<Boolean> future;
+        private final long startedAt;
+        private int next;
+        private int lastPercent;
+        private boolean failed;
+        private boolean ended;
+
+        private PasteJob(String name, SectionWriter writer, List<int[]> sections, IntConsumer progress) {
+            this.name = name;
+            this.writer = writer;
+            this.sections = sections;
+            this.progress = progress;
+            this.future = new CompletableFuture<>();
+            this.startedAt = System.currentTimeMillis();
+        }
+    }
+}
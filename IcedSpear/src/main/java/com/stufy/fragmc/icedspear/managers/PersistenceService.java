@@ -0,0 +1,169 @@
+package com.stufy.fragmc.icedspear.managers;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Takes file writes off the main thread. Files are marked dirty as often as needed; every
+ * flush serializes each dirty file once on the main thread and hands the result to a single
+ * writer thread, which replaces the file atomically. Files that are expensive to encode can
+ * instead hand over a snapshot that the writer thread encodes. Other I/O can be queued on the
+ * same thread so it stays ordered with the file writes.
+ */
+public class PersistenceService {
+    private final IcedSpear plugin;
+    private final ExecutorService writer;
+
+    // File -> snapshot taker returning the encoder, in the order the files were first marked dirty
+    private final Map<File, Supplier<Supplier<byte[]>>> dirty;
+    private int pendingChanges;
+    private BukkitTask task;
+
+    public PersistenceService(IcedSpear plugin) {
+        this.plugin = plugin;
+        this.dirty = new LinkedHashMap<>();
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "IcedSpear-Persistence");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start flushing on a timer
+     */
+    public void start() {
+        long interval = Math.max(1, plugin.getConfig().getLong("persistence.flush-interval-seconds", 5)) * 20L;
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::flush, interval, interval);
+    }
+
+    /**
+     * Mark a file as changed. Must be called on the main thread.
+     * @param file The file to rewrite on the next flush
+     * @param serializer Produces the file contents; called on the main thread at flush time
+     */
+    public void markDirty(File file, Supplier<String> serializer) {
+        markDirtyBytes(file, () -> serializer.get().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Mark a binary file as changed. Must be called on the main thread.
+     * @param file The file to rewrite on the next flush
+     * @param serializer Produces the file contents; called on the main thread at flush time
+     */
+    public void markDirtyBytes(File file, Supplier<byte[]> serializer) {
+        markDirtySnapshot(file, () -> {
+            byte[] contents = serializer.get();
+            return () -> contents;
+        });
+    }
+
+    /**
+     * Mark a file as changed whose contents are expensive to encode. Must be called on the main thread.
+     * @param file The file to rewrite on the next flush
+     * @param snapshot Copies what the file needs on the main thread at flush time and returns the
+     *                 encoder, which runs on the writer thread and must only use that copy
+     */
+    public void markDirtySnapshot(File file, Supplier<Supplier<byte[]>> snapshot) {
+        dirty.put(file, snapshot);
+
+        if (++pendingChanges >= Math.max(1, plugin.getConfig().getInt("persistence.flush-after-changes", 50))) {
+            flush();
+        }
+    }
+
+    /**
+     * Run I/O on the writer thread, after every write queued before it
+     */
+    public void submit(Runnable io) {
+        try {
+            writer.execute(() -> {
+                try {
+                    io.run();
+                } catch (Exception e) {
+                    plugin.getLogger().severe("Background write failed: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down already; run it here rather than lose it
+            io.run();
+        }
+    }
+
+    /**
+     * Serialize every dirty file and queue the writes. Must be called on the main thread.
+     */
+    public void flush() {
+        pendingChanges = 0;
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<File, Supplier<Supplier<byte[]>>> entry : dirty.entrySet()) {
+            File file = entry.getKey();
+            Supplier<byte[]> encoder;
+            try {
+                encoder = entry.getValue().get();
+            } catch (Exception e) {
+                plugin.getLogger().severe("Could not serialize " + file.getName() + ": " + e.getMessage());
+                continue;
+            }
+
+            submit(() -> {
+                byte[] contents;
+                try {
+                    contents = encoder.get();
+                } catch (Exception e) {
+                    plugin.getLogger().severe("Could not serialize " + file.getName() + ": " + e.getMessage());
+                    return;
+                }
+                write(file, contents);
+            });
+        }
+        dirty.clear();
+    }
+
+    private void write(File file, byte[] contents) {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            Files.write(temp.toPath(), contents);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not save " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Flush everything and wait for the writer thread to finish
+     */
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        flush();
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+                plugin.getLogger().severe("Timed out waiting for pending writes");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.stufy.fragmc.icedspear.managers;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+import com.stufy.fragmc.icedspear.models.Plot;
+import com.stufy.fragmc.icedspear.models.SchematicMetadata;
+import org.bukkit.World;
+
+import java.util.*;
+
+/**
+ * Places map instances as plots on a grid in a few shared void worlds,
+ * instead of creating a world per instance. All methods run on the main thread.
+ */
+public class PlotAllocator {
+    static final String PLOT_WORLD_PREFIX = "icedspear_plots_";
+
+    private final IcedSpear plugin;
+    private final MapManager mapManager;
+    private final ConfigManager configManager;
+
+    // Shared world index -> loaded world
+    private final Map<Integer, World> worlds;
+
+    // Shared world index -> plots in use
+    private final Map<Integer, BitSet> usedPlots;
+
+    public PlotAllocator(IcedSpear plugin, MapManager mapManager, ConfigManager configManager) {
+        this.plugin = plugin;
+        this.mapManager = mapManager;
+        this.configManager = configManager;
+        this.worlds = new HashMap<>();
+        this.usedPlots = new HashMap<>();
+    }
+
+    public boolean isEnabled() {
+        return configManager.isPlotsEnabled();
+    }
+
+    /**
+     * Check whether a schematic fits in one plot. A wider one would overlap its
+     * neighbour, and clearing it would then wipe a live instance.
+     */
+    public boolean fits(SchematicMetadata metadata) {
+        int spacing = configManager.getPlotSpacing();
+        return metadata.getWidth() <= spacing && metadata.getLength() <= spacing;
+    }
+
+    /**
+     * Reserve a free plot, using the shared world with the fewest plots in use
+     * @return The plot, or null if every shared world is full
+     */
+    public Plot allocate() {
+        int gridSize = Math.max(1, configManager.getPlotGridSize());
+        int capacity = gridSize * gridSize;
+
+        int bestWorld = -1;
+        int bestUsed = Integer.MAX_VALUE;
+        for (int i = 0; i < Math.max(1, configManager.getPlotWorldCount()); i++) {
+            // Plots are not tracked across restarts, so a world still being swept must not be loaded
+            if (!worlds.containsKey(i) && mapManager.getWorldDeletionService().isPendingDeletion(PLOT_WORLD_PREFIX + i)) {
+                continue;
+            }
+
+            int used = usedPlots.containsKey(i) ? usedPlots.get(i).cardinality() : 0;
+            if (used < capacity && used < bestUsed) {
+                bestWorld = i;
+                bestUsed = used;
+            }
+        }
+
+        if (bestWorld == -1) {
+            return null;
+        }
+
+        World world = getOrCreateWorld(bestWorld);
+        if (world == null) {
+            return null;
+        }
+
+        BitSet used = usedPlots.computeIfAbsent(bestWorld, k -> new BitSet(capacity));
+        int index = used.nextClearBit(0);
+        used.set(index);
+
+        int spacing = configManager.getPlotSpacing();
+        return new Plot(world, index, (index % gridSize) * spacing, (index / gridSize) * spacing);
+    }
+
+    /**
+     * Return a plot so it can be handed out again. The caller clears its blocks first.
+     */
+    public void free(Plot plot) {
+        for (Map.Entry<Integer, World> entry : worlds.entrySet()) {
+            if (entry.getValue().equals(plot.getWorld())) {
+                BitSet used = usedPlots.get(entry.getKey());
+                if (used != null) {
+                    used.clear(plot.getIndex());
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the number of plots currently in use across all shared worlds
+     */
+    public int getUsedPlotCount() {
+        int total = 0;
+        for (BitSet used : usedPlots.values()) {
+            total += used.cardinality();
+        }
+        return total;
+    }
+
+    private World getOrCreateWorld(int index) {
+        World world = worlds.get(index);
+        if (world != null) {
+            return world;
+        }
+
+        world = mapManager.createVoidWorld(PLOT_WORLD_PREFIX + index);
+        if (world == null) {
+            plugin.getLogger().severe("Failed to create shared plot world: " + PLOT_WORLD_PREFIX + index);
+            return null;
+        }
+
+        configManager.applyWorldSettings(world);
+        mapManager.getWorldDeletionService().markInstanceWorld(world.getWorldFolder());
+        worlds.put(index, world);
+        plugin.getLogger().info("Created shared plot world: " + world.getName());
+        return world;
+    }
+}
@@ -1,48 +1,99 @@
 package com.stufy.fragmc.icedspear.managers;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.MaxChangedBlocksException;
 import com.sk89q.worldedit.WorldEdit;
+import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.bukkit.BukkitAdapter;
 import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormats;
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
-import com.sk89q.worldedit.function.operation.Operation;
+import com.sk89q.worldedit.function.mask.Masks;
+import com.sk89q.worldedit.function.operation.ForwardExtentCopy;
 import com.sk89q.worldedit.function.operation.Operations;
 import com.sk89q.worldedit.math.BlockVector3;
-import com.sk89q.worldedit.session.ClipboardHolder;
+import com.sk89q.worldedit.world.block.BaseBlock;
+import com.sk89q.worldedit.world.block.BlockType;
+import com.sk89q.worldedit.world.block.BlockTypes;
 import com.stufy.fragmc.icedspear.IcedSpear;
+import com.stufy.fragmc.icedspear.models.SchematicMetadata;
+import com.stufy.fragmc.icedspear.schematic.CompiledSchematic;
+import com.stufy.fragmc.icedspear.schematic.SchematicCompiler;
+import org.bukkit.Bukkit;
 import org.bukkit.Location;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.util.Vector;
 
 import java.io.*;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
 
 import org.bukkit.util.BoundingBox;
 
 public class SchematicManager {
     private final IcedSpear plugin;
     private final File schematicsFolder;
-    private final Map<String, String> mapToSchematic;
-    private JsonObject mapData;
+    private final SchematicStore store;
+    private final File mapDataCacheFile;
+    private final File mapDataCacheInfoFile;
+
+    // Replaced as a whole when the catalog changes, never modified in place
+    private volatile Map<String, String> mapToSchematic;
+
+    // Content hash -> spawn/finish positions, checked against the file before use
+    private final Map<String, SchematicMetadata> metadataCache;
+    private final ClipboardCache clipboardCache;
+    private final PasteScheduler pasteScheduler;
+    private final SchematicWarmup warmup;
+    private SchematicWatcher watcher;
 
     public SchematicManager(IcedSpear plugin) {
         this.plugin = plugin;
         this.schematicsFolder = new File(plugin.getDataFolder(), "schematics");
-        this.mapToSchematic = new HashMap<>();
+        this.mapDataCacheFile = new File(plugin.getDataFolder(), "map-data-cache.json");
+        this.mapDataCacheInfoFile = new File(plugin.getDataFolder(), "map-data-cache.yml");
+        this.mapToSchematic = Collections.emptyMap();
+        this.metadataCache = new ConcurrentHashMap<>();
+        this.clipboardCache = new ClipboardCache(getClipboardCacheLimit());
+        this.pasteScheduler = new PasteScheduler(plugin);
+        this.warmup = new SchematicWarmup(plugin, this);
 
         if (!schematicsFolder.exists()) {
             schematicsFolder.mkdirs();
         }
 
+        // Files dropped into the folder directly (or left from before the store existed) are moved into it
+        this.store = new SchematicStore(plugin, schematicsFolder);
+        store.importLooseFiles(schematicsFolder);
+
+        loadCachedMapData();
         loadMapData();
+
+        if (plugin.getConfig().getBoolean("schematic-watcher.enabled", true)) {
+            watcher = new SchematicWatcher(plugin, this, schematicsFolder);
+            watcher.start();
+        }
     }
 
+    /**
+     * Refresh the map catalog from map-data-url in the background. The current catalog stays
+     * in use until the new one has been downloaded and parsed, then it is swapped in on the main thread.
+     */
     public void loadMapData() {
+        clipboardCache.setMaxBytes(getClipboardCacheLimit());
+
         String jsonUrl = plugin.getConfig().getString("map-data-url", "");
 
         if (jsonUrl.isEmpty()) {
@@ -50,213 +101,773 @@ public class SchematicManager {
             return;
         }
 
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> refreshMapData(jsonUrl));
+    }
+
+    /**
+     * Load the catalog saved by the last successful download, so maps are available
+     * right away at startup even if the catalog host is slow or down
+     */
+    private void loadCachedMapData() {
+        if (!mapDataCacheFile.exists()) {
+            return;
+        }
+
+        try {
+            applyCatalog(parseCatalog(mapDataCacheFile), "cached map data");
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to read cached map data: " + e.getMessage());
+        }
+    }
+
+    private void refreshMapData(String jsonUrl) {
+        YamlConfiguration cacheInfo = YamlConfiguration.loadConfiguration(mapDataCacheInfoFile);
+        // Validators only apply to the URL the cached copy came from
+        boolean conditional = jsonUrl.equals(cacheInfo.getString("url")) && mapDataCacheFile.exists();
+        int timeout = (int) (plugin.getConfig().getDouble("map-data-timeout-seconds", 10) * 1000);
+        File download = new File(mapDataCacheFile.getPath() + ".tmp");
+
         try {
             plugin.getLogger().info("Loading map data from: " + jsonUrl);
 
-            URL url = new URL(jsonUrl);
-            java.net.HttpURLConnection connection = (java.net.HttpURLConnection) url.openConnection();
-            connection.setInstanceFollowRedirects(true); // Follow redirects (http -> https)
-            connection.setRequestProperty("User-Agent", "IcedSpear/1.0"); // Some servers require user agent
-            connection.connect();
+            HttpURLConnection connection = null;
+            String currentUrl = jsonUrl;
+            // Redirects are followed by hand since HttpURLConnection does not follow http -> https
+            for (int redirects = 0; redirects <= 5; redirects++) {
+                connection = (HttpURLConnection) new URL(currentUrl).openConnection();
+                connection.setInstanceFollowRedirects(true);
+                connection.setConnectTimeout(timeout);
+                connection.setReadTimeout(timeout);
+                connection.setRequestProperty("User-Agent", "IcedSpear/1.0"); // Some servers require user agent
+                if (conditional) {
+                    String etag = cacheInfo.getString("etag");
+                    String lastModified = cacheInfo.getString("last-modified");
+                    if (etag != null) {
+                        connection.setRequestProperty("If-None-Match", etag);
+                    }
+                    if (lastModified != null) {
+                        connection.setRequestProperty("If-Modified-Since", lastModified);
+                    }
+                }
 
-            int responseCode = connection.getResponseCode();
-            plugin.getLogger().info("HTTP Response Code: " + responseCode);
+                int responseCode = connection.getResponseCode();
+                if (responseCode != 301 && responseCode != 302 && responseCode != 303 && responseCode != 307 && responseCode != 308) {
+                    break;
+                }
 
-            if (responseCode == 301 || responseCode == 302) {
-                String newUrl = connection.getHeaderField("Location");
-                plugin.getLogger().info("Redirected to: " + newUrl);
-                connection = (java.net.HttpURLConnection) new URL(newUrl).openConnection();
-                connection.connect();
+                currentUrl = new URL(new URL(currentUrl), connection.getHeaderField("Location")).toString();
+                plugin.getLogger().info("Redirected to: " + currentUrl);
+                connection.disconnect();
             }
 
-            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            StringBuilder json = new StringBuilder();
-            String line;
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                plugin.getLogger().info("Map data unchanged since last download");
+                if (mapToSchematic.isEmpty()) {
+                    // Nothing loaded yet (e.g. the cache was unreadable), fall back to a full download
+                    cacheInfo.set("url", null);
+                    cacheInfo.save(mapDataCacheInfoFile);
+                    refreshMapData(jsonUrl);
+                }
+                return;
+            }
 
-            while ((line = reader.readLine()) != null) {
-                json.append(line);
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                plugin.getLogger().severe("Failed to load map data: HTTP " + responseCode + ", keeping the current maps");
+                return;
             }
-            reader.close();
 
-            String jsonString = json.toString();
-            plugin.getLogger().info("Received JSON (first 200 chars): " +
-                    jsonString.substring(0, Math.min(200, jsonString.length())));
+            // Stream the body to disk, it is parsed from there without holding it all in memory
+            try (InputStream in = connection.getInputStream()) {
+                Files.copy(in, download.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
 
             // Check if response is HTML (error page)
-            if (jsonString.trim().startsWith("<")) {
+            if (startsWithHtml(download)) {
                 plugin.getLogger().severe("URL returned HTML instead of JSON! Check if the URL is correct.");
-                plugin.getLogger().severe("Response: " + jsonString.substring(0, Math.min(500, jsonString.length())));
                 return;
             }
 
-            Gson gson = new Gson();
-            mapData = gson.fromJson(jsonString, JsonObject.class);
+            Map<String, String> catalog = parseCatalog(download);
 
-            if (mapData == null) {
-                plugin.getLogger().severe("Failed to parse JSON - mapData is null");
-                return;
-            }
+            // The copy used at the next startup; replaced atomically so a crash never leaves half a file
+            Files.move(download.toPath(), mapDataCacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 
-            // Parse map data
-            mapToSchematic.clear();
-            for (String mapName : mapData.keySet()) {
-                JsonObject mapInfo = mapData.getAsJsonObject(mapName);
-                if (mapInfo.has("schematic")) {
-                    String schematic = mapInfo.get("schematic").getAsString();
-                    mapToSchematic.put(mapName, schematic);
-                    plugin.getLogger().info("Loaded map: " + mapName + " -> " + schematic);
-                }
-            }
+            cacheInfo.set("url", jsonUrl);
+            cacheInfo.set("etag", connection.getHeaderField("ETag"));
+            cacheInfo.set("last-modified", connection.getHeaderField("Last-Modified"));
+            cacheInfo.save(mapDataCacheInfoFile);
 
-            plugin.getLogger().info("Successfully loaded " + mapToSchematic.size() + " maps from external JSON");
+            Bukkit.getScheduler().runTask(plugin, () -> applyCatalog(catalog, "external JSON"));
 
         } catch (Exception e) {
-            plugin.getLogger().severe("Failed to load map data: " + e.getMessage());
-            e.printStackTrace();
+            plugin.getLogger().severe("Failed to load map data: " + e.getMessage() + ", keeping the current maps");
+        } finally {
+            download.delete();
         }
     }
 
-    public boolean pasteSchematic(String schematicName, Location location) {
-        File schematicFile = new File(schematicsFolder, schematicName + ".schem");
-
-        if (!schematicFile.exists()) {
-            schematicFile = new File(schematicsFolder, schematicName + ".schematic");
+    private boolean startsWithHtml(File file) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            int c;
+            while ((c = reader.read()) != -1 && Character.isWhitespace(c)) {
+                // Skip leading whitespace
+            }
+            return c == '<';
         }
+    }
 
-        if (!schematicFile.exists()) {
-            plugin.getLogger().warning("Schematic file not found: " + schematicName);
-            plugin.getLogger().warning("Searched in: " + schematicsFolder.getAbsolutePath());
-            plugin.getLogger().warning("Looking for: " + schematicName + ".schem or " + schematicName + ".schematic");
+    /**
+     * Read map name -> schematic pairs from a catalog file with a streaming parser,
+     * skipping every other field without building a JSON tree
+     */
+    private Map<String, String> parseCatalog(File file) throws IOException {
+        Map<String, String> catalog = new HashMap<>();
+
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String mapName = reader.nextName();
+                if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
 
-            // List available schematics
-            File[] files = schematicsFolder.listFiles();
-            if (files != null && files.length > 0) {
-                plugin.getLogger().warning("Available schematics:");
-                for (File file : files) {
-                    plugin.getLogger().warning("  - " + file.getName());
+                String schematic = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("schematic") && reader.peek() == JsonToken.STRING) {
+                        schematic = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                if (schematic != null) {
+                    catalog.put(mapName, schematic);
                 }
-            } else {
-                plugin.getLogger().warning("Schematics folder is empty!");
             }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            throw new IOException("Malformed map data: " + e.getMessage(), e);
+        }
 
-            return false;
+        return catalog;
+    }
+
+    /**
+     * Swap in a new catalog, touching only the maps that were added, removed or changed.
+     * Pooled instances of removed or changed maps are dropped and unused parsed schematics evicted.
+     */
+    private void applyCatalog(Map<String, String> catalog, String source) {
+        Map<String, String> current = mapToSchematic;
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+
+        for (Map.Entry<String, String> entry : catalog.entrySet()) {
+            String previous = current.get(entry.getKey());
+            if (previous == null) {
+                added.add(entry.getKey());
+            } else if (!previous.equals(entry.getValue())) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String mapName : current.keySet()) {
+            if (!catalog.containsKey(mapName)) {
+                removed.add(mapName);
+            }
         }
 
-        plugin.getLogger().info("Found schematic file: " + schematicFile.getName());
+        if (added.isEmpty() && removed.isEmpty() && changed.isEmpty()) {
+            plugin.getLogger().info("Map data from " + source + " has no changes (" + current.size() + " maps)");
+            return;
+        }
 
-        try {
-            ClipboardFormat format = ClipboardFormats.findByFile(schematicFile);
+        mapToSchematic = Collections.unmodifiableMap(catalog);
+
+        for (String mapName : added) {
+            plugin.getLogger().fine("Added map: " + mapName + " -> " + catalog.get(mapName));
+        }
+        for (String mapName : changed) {
+            plugin.getLogger().fine("Changed map: " + mapName + " -> " + catalog.get(mapName));
+        }
+        for (String mapName : removed) {
+            plugin.getLogger().fine("Removed map: " + mapName);
+        }
 
-            if (format == null) {
-                plugin.getLogger().warning("Unknown schematic format: " + schematicName);
-                return false;
+        // Forget what only the old catalog referenced; unchanged maps keep their caches and instances
+        Set<String> usedHashes = new HashSet<>();
+        for (String schematic : catalog.values()) {
+            String hash = store.getHash(schematic);
+            if (hash != null) {
+                usedHashes.add(hash);
             }
+        }
+
+        List<String> stale = new ArrayList<>(removed);
+        stale.addAll(changed);
+        for (String mapName : stale) {
+            String oldHash = store.getHash(current.get(mapName));
+            if (oldHash != null && !usedHashes.contains(oldHash)) {
+                clipboardCache.remove(oldHash);
+                metadataCache.remove(oldHash);
+            }
+            if (plugin.getMapManager() != null) {
+                plugin.getMapManager().getInstancePool().invalidate(mapName);
+            }
+        }
+
+        plugin.getLogger().info("Loaded " + catalog.size() + " maps from " + source + " (" + added.size() + " added, "
+                + changed.size() + " changed, " + removed.size() + " removed)");
 
-            plugin.getLogger().info("Using format: " + format.getName());
+        // Parse new schematics before anyone asks for them; at startup every map counts as added
+        if (plugin.getConfig().getBoolean("schematic-warmup.enabled", false)) {
+            List<String> warm = new ArrayList<>();
+            for (String mapName : added) {
+                warm.add(catalog.get(mapName));
+            }
+            for (String mapName : changed) {
+                warm.add(catalog.get(mapName));
+            }
+            warmup.start(warm);
+        }
+    }
 
-            try (ClipboardReader reader = format.getReader(new FileInputStream(schematicFile))) {
-                Clipboard clipboard = reader.read();
+    /**
+     * Paste a schematic over several ticks. The schematic is read off the main thread, then placed
+     * section by section within the paste time budget, nearest the spawn block first.
+     * @param schematicName The schematic name
+     * @param location Where the schematic's origin goes
+     * @param progress Receives the completed percentage on the main thread
+     * @return Completes on the main thread with true once the paste is done; cancel it to stop the paste
+     */
+    public CompletableFuture<Boolean> pasteSchematic(String schematicName, Location location, IntConsumer progress) {
+        File schematicFile = getSchematicFile(schematicName);
 
-                // Get dimensions using the region
-                BlockVector3 min = clipboard.getMinimumPoint();
-                BlockVector3 max = clipboard.getMaximumPoint();
-                int width = max.x() - min.x() + 1;
-                int height = max.y() - min.y() + 1;
-                int length = max.z() - min.z() + 1;
+        if (schematicFile == null) {
+            plugin.getLogger().warning("Schematic not found: " + schematicName);
 
-                plugin.getLogger().info("Clipboard loaded, dimensions: " +
-                        width + "x" + height + "x" + length);
+            // List available schematics
+            Set<String> names = new TreeSet<>(store.getNames());
+            if (!names.isEmpty()) {
+                plugin.getLogger().warning("Available schematics:");
+                for (String name : names) {
+                    plugin.getLogger().warning("  - " + name);
+                }
+            } else {
+                plugin.getLogger().warning("No schematics stored!");
+            }
 
-                com.sk89q.worldedit.world.World weWorld = BukkitAdapter.adapt(location.getWorld());
+            return CompletableFuture.completedFuture(false);
+        }
 
-                try (EditSession editSession = WorldEdit.getInstance().newEditSession(weWorld)) {
-                    editSession.setFastMode(false); // Disable fast mode to ensure proper pasting
+        plugin.getLogger().info("Found schematic file: " + schematicFile.getName());
 
-                    Operation operation = new ClipboardHolder(clipboard)
-                            .createPaste(editSession)
-                            .to(BlockVector3.at(location.getX(), location.getY(), location.getZ()))
-                            .ignoreAirBlocks(false)
-                            .copyEntities(true) // Copy entities from schematic
-                            .copyBiomes(false) // Don't copy biomes (can cause issues)
-                            .build();
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            // Parsing and scanning happen here, only block placement runs on the main thread
+            PreparedPaste prepared = preparePaste(schematicName, schematicFile, location);
+            SchematicMetadata metadata = prepared != null ? getMetadata(schematicName) : null;
+
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                if (prepared == null || result.isDone()) {
+                    if (prepared != null) {
+                        prepared.writer.close();
+                    }
+                    result.complete(false);
+                    return;
+                }
 
-                    Operations.complete(operation);
+                Vector spawnBlock = metadata != null ? metadata.getSpawnBlockOffset() : null;
+                int priorityX = location.getBlockX() + (spawnBlock != null ? spawnBlock.getBlockX() : 0);
+                int priorityY = location.getBlockY() + (spawnBlock != null ? spawnBlock.getBlockY() : 0);
+                int priorityZ = location.getBlockZ() + (spawnBlock != null ? spawnBlock.getBlockZ() : 0);
+
+                CompletableFuture<Boolean> paste = pasteScheduler.submit(schematicName, prepared.writer,
+                        location.getBlockX() + prepared.offsetX, location.getBlockY() + prepared.offsetY, location.getBlockZ() + prepared.offsetZ,
+                        prepared.width, prepared.height, prepared.length, priorityX, priorityY, priorityZ, progress);
+                paste.thenAccept(result::complete);
+                // Cancelling the returned future stops the queued paste
+                result.whenComplete((success, error) -> paste.cancel(false));
+            });
+        });
+
+        return result;
+    }
 
-                    plugin.getLogger().info("Schematic pasted successfully at " +
-                            location.getBlockX() + ", " + location.getBlockY() + ", " + location.getBlockZ());
+    private PreparedPaste preparePaste(String schematicName, File schematicFile, Location location) {
+        CompiledSchematic compiled = getCompiledSchematic(schematicName, schematicFile);
+        if (compiled != null) {
+            BlockData[] palette = resolvePalette(schematicName, compiled);
+            if (palette != null) {
+                if (getCachedMetadata(schematicName) == null) {
+                    metadataCache.put(cacheKey(schematicFile), scanCompiled(schematicName, schematicFile, compiled));
                 }
 
-                // Give the world a moment to process the paste
-                Thread.sleep(100);
+                int baseX = location.getBlockX() + compiled.getMinOffsetX();
+                int baseY = location.getBlockY() + compiled.getMinOffsetY();
+                int baseZ = location.getBlockZ() + compiled.getMinOffsetZ();
+                return new PreparedPaste(new CompiledWriter(compiled, palette, location.getWorld(), baseX, baseY, baseZ),
+                        compiled.getMinOffsetX(), compiled.getMinOffsetY(), compiled.getMinOffsetZ(),
+                        compiled.getWidth(), compiled.getHeight(), compiled.getLength());
+            }
+        }
+
+        Clipboard clipboard = loadClipboard(schematicName, schematicFile);
+        if (clipboard == null) {
+            return null;
+        }
 
-                return true;
+        BlockVector3 min = clipboard.getMinimumPoint();
+        BlockVector3 max = clipboard.getMaximumPoint();
+        BlockVector3 origin = clipboard.getOrigin();
+        int width = max.x() - min.x() + 1;
+        int height = max.y() - min.y() + 1;
+        int length = max.z() - min.z() + 1;
+
+        plugin.getLogger().info("Clipboard loaded, dimensions: " +
+                width + "x" + height + "x" + length);
+
+        // Scan while the clipboard is loaded anyway, so spawn setup never has to parse it again
+        if (getCachedMetadata(schematicName) == null) {
+            try {
+                metadataCache.put(cacheKey(schematicFile), scanClipboard(schematicName, schematicFile, clipboard));
+            } catch (RuntimeException e) {
+                clipboardCache.release(clipboard);
+                throw e;
             }
+        }
+
+        BlockVector3 to = BlockVector3.at(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        // The writer holds the clipboard until the paste is over
+        return new PreparedPaste(new ClipboardWriter(clipboardCache, clipboard, BukkitAdapter.adapt(location.getWorld()), to),
+                min.x() - origin.x(), min.y() - origin.y(), min.z() - origin.z(), width, height, length);
+    }
+
+    /**
+     * Get the parsed clipboard of a schematic, from the cache if the same content was parsed before.
+     * Pass it to {@link #releaseClipboard} when done so it can be closed once it leaves the cache.
+     * @param schematicName The schematic name
+     * @param schematicFile The schematic file
+     * @return The clipboard, or null if the file could not be read
+     */
+    public Clipboard loadClipboard(String schematicName, File schematicFile) {
+        Clipboard cached = clipboardCache.acquire(cacheKey(schematicFile), schematicFile);
+        if (cached != null) {
+            return cached;
+        }
+
+        ClipboardFormat format = ClipboardFormats.findByFile(schematicFile);
+        if (format == null) {
+            plugin.getLogger().warning("Unknown schematic format: " + schematicName);
+            return null;
+        }
 
+        plugin.getLogger().info("Parsing schematic " + schematicName + " using format: " + format.getName());
+
+        try (ClipboardReader reader = format.getReader(new FileInputStream(schematicFile))) {
+            Clipboard clipboard = reader.read();
+            clipboardCache.put(cacheKey(schematicFile), schematicFile, clipboard);
+            return clipboard;
         } catch (Exception e) {
-            plugin.getLogger().severe("Failed to paste schematic: " + e.getMessage());
+            plugin.getLogger().severe("Failed to read schematic " + schematicName + ": " + e.getMessage());
             e.printStackTrace();
-            return false;
+            return null;
         }
     }
 
+    /**
+     * Give back a clipboard from {@link #loadClipboard}
+     */
+    public void releaseClipboard(Clipboard clipboard) {
+        clipboardCache.release(clipboard);
+    }
+
+    /**
+     * Get the file a schematic is stored in
+     * @param schematicName The schematic name
+     * @return The stored .schem or .schematic file, or null if there is none
+     */
+    public File getSchematicFile(String schematicName) {
+        File schematicFile = store.getFile(schematicName);
+        return schematicFile != null && schematicFile.exists() ? schematicFile : null;
+    }
+
+    /**
+     * Get the content hash of a schematic, which parsed and compiled forms are cached under
+     * @param schematicName The schematic name
+     * @return The hash, or null if the schematic is not stored
+     */
+    public String getSchematicHash(String schematicName) {
+        return store.getHash(schematicName);
+    }
+
+    // Stored files are named after their content hash
+    private String cacheKey(File schematicFile) {
+        return SchematicStore.stripExtension(schematicFile.getName());
+    }
+
     public org.bukkit.util.BoundingBox getSchematicBounds(String schematicName, Location pasteLocation) {
-        File schematicFile = new File(schematicsFolder, schematicName + ".schem");
-        if (!schematicFile.exists()) {
-            schematicFile = new File(schematicsFolder, schematicName + ".schematic");
+        SchematicMetadata metadata = getMetadata(schematicName);
+        return metadata != null ? metadata.getBounds(pasteLocation) : null;
+    }
+
+    /**
+     * Get the spawn and finish positions of a schematic, scanning it if they are not cached
+     * or the file changed. This may parse the schematic, so avoid calling it on the main thread.
+     * @param schematicName The schematic name
+     * @return The metadata, or null if the schematic could not be read
+     */
+    public SchematicMetadata getMetadata(String schematicName) {
+        SchematicMetadata cached = getCachedMetadata(schematicName);
+        if (cached != null) {
+            return cached;
         }
 
-        if (!schematicFile.exists()) {
+        File schematicFile = getSchematicFile(schematicName);
+        if (schematicFile == null) {
             return null;
         }
 
-        ClipboardFormat format = ClipboardFormats.findByFile(schematicFile);
-        if (format == null) {
+        CompiledSchematic compiled = getCompiledSchematic(schematicName, schematicFile);
+        if (compiled != null) {
+            SchematicMetadata metadata = scanCompiled(schematicName, schematicFile, compiled);
+            metadataCache.put(cacheKey(schematicFile), metadata);
+            return metadata;
+        }
+
+        Clipboard clipboard = loadClipboard(schematicName, schematicFile);
+        if (clipboard == null) {
             return null;
         }
 
-        try (ClipboardReader reader = format.getReader(new FileInputStream(schematicFile))) {
-            Clipboard clipboard = reader.read();
+        try {
+            SchematicMetadata metadata = scanClipboard(schematicName, schematicFile, clipboard);
+            metadataCache.put(cacheKey(schematicFile), metadata);
+            return metadata;
+        } finally {
+            clipboardCache.release(clipboard);
+        }
+    }
+
+    /**
+     * Get the spawn and finish positions of a schematic only if they are cached and still current
+     * @param schematicName The schematic name
+     * @return The metadata, or null if it has to be scanned first
+     */
+    public SchematicMetadata getCachedMetadata(String schematicName) {
+        File schematicFile = getSchematicFile(schematicName);
+        if (schematicFile == null) {
+            return null;
+        }
+
+        String key = cacheKey(schematicFile);
+        SchematicMetadata cached = metadataCache.get(key);
+        if (cached != null && !cached.matchesSource(schematicFile.lastModified(), schematicFile.length())) {
+            metadataCache.remove(key, cached);
+            return null;
+        }
 
-            BlockVector3 origin = clipboard.getOrigin();
-            com.sk89q.worldedit.regions.Region region = clipboard.getRegion();
-            BlockVector3 min = region.getMinimumPoint();
-            BlockVector3 max = region.getMaximumPoint();
+        return cached;
+    }
+
+    private SchematicMetadata scanClipboard(String schematicName, File schematicFile, Clipboard clipboard) {
+        BlockVector3 origin = clipboard.getOrigin();
+        BlockVector3 min = clipboard.getRegion().getMinimumPoint();
+        BlockVector3 max = clipboard.getRegion().getMaximumPoint();
+
+        BlockVector3 spawnBlock = null;
+        List<Vector> finishBlocks = new ArrayList<>();
+
+        for (BlockVector3 position : clipboard.getRegion()) {
+            BlockType type = clipboard.getBlock(position).getBlockType();
 
-            BlockVector3 offset = BlockVector3.at(pasteLocation.getX(), pasteLocation.getY(), pasteLocation.getZ())
-                    .subtract(origin);
-            BlockVector3 pastedMin = min.add(offset);
-            BlockVector3 pastedMax = max.add(offset);
+            if (type == BlockTypes.GOLD_BLOCK) {
+                // Keep the gold block a world scan in x, z, y order would have found first
+                if (spawnBlock == null || compareScanOrder(position, spawnBlock) < 0) {
+                    spawnBlock = position;
+                }
+            } else if (type == BlockTypes.DIAMOND_BLOCK) {
+                finishBlocks.add(toOffset(position, origin));
+            }
+        }
 
-            return new org.bukkit.util.BoundingBox(pastedMin.x(), pastedMin.y(), pastedMin.z(), pastedMax.x(),
-                    pastedMax.y(), pastedMax.z());
+        if (spawnBlock == null) {
+            plugin.getLogger().warning("No gold block found in schematic " + schematicName + "! Using default spawn location.");
+        } else {
+            plugin.getLogger().info("Scanned schematic " + schematicName + ": gold block at " +
+                    spawnBlock.x() + ", " + spawnBlock.y() + ", " + spawnBlock.z() + ", " + finishBlocks.size() + " finish block(s)");
+        }
+
+        return new SchematicMetadata(schematicName, schematicFile.lastModified(), schematicFile.length(),
+                toOffset(min, origin), toOffset(max, origin),
+                spawnBlock != null ? toOffset(spawnBlock, origin) : null, finishBlocks);
+    }
+
+    /**
+     * Compile a schematic into the palette-indexed format so pastes can skip WorldEdit's parser.
+     * This reads the whole schematic, so avoid calling it on the main thread.
+     * @param schematicName The schematic name
+     * @return true if the schematic was compiled
+     */
+    public boolean compileSchematic(String schematicName) {
+        File schematicFile = getSchematicFile(schematicName);
+        if (schematicFile == null) {
+            plugin.getLogger().warning("Schematic file not found: " + schematicName);
+            return false;
+        }
+
+        File output = SchematicCompiler.getOutputFile(schematicFile);
+        try {
+            long start = System.currentTimeMillis();
+            SchematicCompiler.compile(schematicFile, output);
+            plugin.getLogger().info("Compiled schematic " + schematicName + " (" + output.length() + " bytes) in "
+                    + (System.currentTimeMillis() - start) + "ms");
+            return true;
         } catch (Exception e) {
-            plugin.getLogger().severe("Failed to get schematic bounds: " + e.getMessage());
-            e.printStackTrace();
+            plugin.getLogger().warning("Could not compile schematic " + schematicName + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Memory-map the compiled form of a schematic if it exists and was built from the current file
+     * @return The compiled schematic, or null if the schematic has to be parsed instead
+     */
+    private CompiledSchematic getCompiledSchematic(String schematicName, File schematicFile) {
+        File compiledFile = SchematicCompiler.getOutputFile(schematicFile);
+        if (!compiledFile.exists()) {
             return null;
         }
+
+        try {
+            CompiledSchematic compiled = CompiledSchematic.open(compiledFile);
+            if (compiled.matchesSource(schematicFile.lastModified(), schematicFile.length())) {
+                return compiled;
+            }
+            plugin.getLogger().info("Compiled schematic " + schematicName + " is outdated, recompile it with /icedspear compile");
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to open compiled schematic " + schematicName + ": " + e.getMessage());
+        }
+
+        return null;
     }
 
-    public boolean removeSchematic(String schematicName) {
-        File schematicFile = new File(schematicsFolder, schematicName + ".schem");
+    /**
+     * Turn a compiled schematic's palette into block data, with air left as null
+     * since instances are always pasted into empty void worlds or cleared plots
+     * @return The block data by palette index, or null if the palette does not match this server version
+     */
+    private BlockData[] resolvePalette(String schematicName, CompiledSchematic compiled) {
+        List<String> palette = compiled.getPalette();
+        BlockData[] blockData = new BlockData[palette.size()];
+        for (int i = 0; i < blockData.length; i++) {
+            try {
+                blockData[i] = Bukkit.createBlockData(palette.get(i));
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Compiled schematic " + schematicName + " has unknown block " + palette.get(i) + ", parsing the schematic instead");
+                return null;
+            }
+            if (blockData[i].getMaterial().isAir()) {
+                blockData[i] = null;
+            }
+        }
+        return blockData;
+    }
+
+    private SchematicMetadata scanCompiled(String schematicName, File schematicFile, CompiledSchematic compiled) {
+        int goldIndex = compiled.findPaletteIndex("minecraft:gold_block");
+        int diamondIndex = compiled.findPaletteIndex("minecraft:diamond_block");
+        int offsetX = compiled.getMinOffsetX();
+        int offsetY = compiled.getMinOffsetY();
+        int offsetZ = compiled.getMinOffsetZ();
+
+        Vector spawnBlock = null;
+        List<Vector> finishBlocks = new ArrayList<>();
+
+        if (goldIndex >= 0 || diamondIndex >= 0) {
+            // x, z, y order so the first gold block matches a world scan
+            for (int x = 0; x < compiled.getWidth(); x++) {
+                for (int z = 0; z < compiled.getLength(); z++) {
+                    for (int y = 0; y < compiled.getHeight(); y++) {
+                        int index = compiled.getBlockIndex(x, y, z);
+                        if (index == goldIndex && spawnBlock == null) {
+                            spawnBlock = new Vector(x + offsetX, y + offsetY, z + offsetZ);
+                        } else if (index == diamondIndex) {
+                            finishBlocks.add(new Vector(x + offsetX, y + offsetY, z + offsetZ));
+                        }
+                    }
+                }
+            }
+        }
 
-        if (!schematicFile.exists()) {
-            schematicFile = new File(schematicsFolder, schematicName + ".schematic");
+        if (spawnBlock == null) {
+            plugin.getLogger().warning("No gold block found in schematic " + schematicName + "! Using default spawn location.");
         }
 
-        if (!schematicFile.exists()) {
-            plugin.getLogger().warning("Schematic file not found: " + schematicName);
+        return new SchematicMetadata(schematicName, schematicFile.lastModified(), schematicFile.length(),
+                new Vector(offsetX, offsetY, offsetZ),
+                new Vector(offsetX + compiled.getWidth() - 1, offsetY + compiled.getHeight() - 1, offsetZ + compiled.getLength() - 1),
+                spawnBlock, finishBlocks);
+    }
+
+    private int compareScanOrder(BlockVector3 a, BlockVector3 b) {
+        if (a.x() != b.x()) return Integer.compare(a.x(), b.x());
+        if (a.z() != b.z()) return Integer.compare(a.z(), b.z());
+        return Integer.compare(a.y(), b.y());
+    }
+
+    private Vector toOffset(BlockVector3 position, BlockVector3 origin) {
+        return new Vector(position.x() - origin.x(), position.y() - origin.y(), position.z() - origin.z());
+    }
+
+    /**
+     * Set every block in an area to air over several ticks, then remove the non-player entities in it.
+     * Must be called on the main thread.
+     * @param world The world
+     * @param bounds The area to clear, maximum corner included
+     * @return Completes on the main thread with true once the area is cleared
+     */
+    public CompletableFuture<Boolean> clearRegion(org.bukkit.World world, BoundingBox bounds) {
+        int baseX = (int) Math.floor(bounds.getMinX());
+        int baseY = (int) Math.floor(bounds.getMinY());
+        int baseZ = (int) Math.floor(bounds.getMinZ());
+        int width = (int) Math.floor(bounds.getMaxX()) - baseX + 1;
+        int height = (int) Math.floor(bounds.getMaxY()) - baseY + 1;
+        int length = (int) Math.floor(bounds.getMaxZ()) - baseZ + 1;
+
+        return pasteScheduler.submit("clear of " + world.getName(), new AirWriter(world, bounds, baseX, baseY, baseZ),
+                baseX, baseY, baseZ, width, height, length, baseX, baseY, baseZ, percent -> {});
+    }
+
+    /**
+     * Sets a region to air section by section, then removes the entities left in it
+     */
+    private static class AirWriter implements PasteScheduler.SectionWriter {
+        private final org.bukkit.World world;
+        private final BoundingBox bounds;
+        private final int baseX;
+        private final int baseY;
+        private final int baseZ;
+
+        AirWriter(org.bukkit.World world, BoundingBox bounds, int baseX, int baseY, int baseZ) {
+            this.world = world;
+            this.bounds = bounds;
+            this.baseX = baseX;
+            this.baseY = baseY;
+            this.baseZ = baseZ;
+        }
+
+        @Override
+        public void write(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            for (int x = baseX + minX; x < baseX + maxX; x++) {
+                for (int z = baseZ + minZ; z < baseZ + maxZ; z++) {
+                    for (int y = baseY + minY; y < baseY + maxY; y++) {
+                        org.bukkit.block.Block block = world.getBlockAt(x, y, z);
+                        if (!block.getType().isAir()) {
+                            block.setType(org.bukkit.Material.AIR, false);
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void finish() {
+            for (org.bukkit.entity.Entity entity : world.getNearbyEntities(bounds.clone().expand(1))) {
+                if (!(entity instanceof org.bukkit.entity.Player)) {
+                    entity.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Move a schematic file dropped into the schematics folder into the store
+     * @param schematicName The schematic name, i.e. the file name without extension
+     * @return true if the schematic now points at different content
+     */
+    public boolean storeLooseSchematic(String schematicName) {
+        File looseFile = new File(schematicsFolder, schematicName + ".schem");
+        if (!looseFile.exists()) {
+            looseFile = new File(schematicsFolder, schematicName + ".schematic");
+        }
+        if (!looseFile.exists()) {
             return false;
         }
 
-        boolean deleted = schematicFile.delete();
+        String previousHash = store.getHash(schematicName);
+        File previousFile = getSchematicFile(schematicName);
+        boolean wasCompiled = previousFile != null && SchematicCompiler.getOutputFile(previousFile).exists();
 
-        if (deleted) {
-            plugin.getLogger().info("Deleted schematic: " + schematicName);
-        } else {
-            plugin.getLogger().warning("Failed to delete schematic: " + schematicName);
+        String hash;
+        try {
+            hash = store.put(schematicName, looseFile, true);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to store schematic " + schematicName + ": " + e.getMessage());
+            return false;
+        }
+
+        if (hash.equals(previousHash)) {
+            return false;
         }
 
-        return deleted;
+        evictIfUnreferenced(previousHash);
+        invalidateInstances(schematicName);
+
+        // Keep a precompiled copy current if the schematic had one
+        if (wasCompiled) {
+            compileSchematic(schematicName);
+        }
+        return true;
+    }
+
+    /**
+     * Drop the pooled instances of every map using a schematic, so none are handed out with old content.
+     * Safe to call from any thread; the pool is only touched on the main thread.
+     */
+    private void invalidateInstances(String schematicName) {
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            if (plugin.getMapManager() == null) {
+                return;
+            }
+            for (Map.Entry<String, String> map : mapToSchematic.entrySet()) {
+                if (map.getValue().equals(schematicName)) {
+                    plugin.getMapManager().getInstancePool().invalidate(map.getKey());
+                }
+            }
+        });
+    }
+
+    private void evictIfUnreferenced(String hash) {
+        if (hash != null && !store.isReferenced(hash)) {
+            metadataCache.remove(hash);
+            clipboardCache.remove(hash);
+        }
+    }
+
+    public boolean removeSchematic(String schematicName) {
+        String hash = store.getHash(schematicName);
+
+        if (hash == null) {
+            plugin.getLogger().warning("Schematic not found: " + schematicName);
+            return false;
+        }
+
+        store.remove(schematicName);
+        evictIfUnreferenced(hash);
+        invalidateInstances(schematicName);
+
+        // The stored file and its compiled copy are gone once no name uses the content
+        if (!store.isReferenced(hash) && plugin.getMapManager() != null) {
+            plugin.getMapManager().getWorldTemplateManager().invalidate(hash);
+        }
+
+        plugin.getLogger().info("Deleted schematic: " + schematicName);
+        return true;
     }
 
     public boolean importSchematic(String worldEditName, String targetName) {
@@ -284,11 +895,14 @@ public class SchematicManager {
             return false;
         }
 
-        File targetFile = new File(schematicsFolder,
-                targetName + sourceFile.getName().substring(worldEditName.length()));
-
         try {
-            Files.copy(sourceFile.toPath(), targetFile.toPath());
+            String previousHash = store.getHash(targetName);
+            String hash = store.put(targetName, sourceFile, false);
+            if (!hash.equals(previousHash)) {
+                evictIfUnreferenced(previousHash);
+                invalidateInstances(targetName);
+            }
+            plugin.getLogger().info("Imported schematic " + targetName + " as " + hash.substring(0, 12));
             return true;
         } catch (IOException e) {
             plugin.getLogger().severe("Failed to import schematic: " + e.getMessage());
@@ -296,15 +910,180 @@ public class SchematicManager {
         }
     }
 
-    public String getSchematicForMap(String mapName) {
-        return mapToSchematic.get(mapName);
+    private static class PreparedPaste {
+        private final PasteScheduler.SectionWriter writer;
+        private final int offsetX;
+        private final int offsetY;
+        private final int offsetZ;
+        private final int width;
+        private final int height;
+        private final int length;
+
+        private PreparedPaste(PasteScheduler.SectionWriter writer, int offsetX, int offsetY, int offsetZ, int width, int height, int length) {
+            this.writer = writer;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.offsetZ = offsetZ;
+            this.width = width;
+            this.height = height;
+            this.length = length;
+        }
     }
 
-    public JsonObject getMapData() {
-        return mapData;
+    /**
+     * Places blocks straight from a memory-mapped compiled schematic
+     */
+    private static class CompiledWriter implements PasteScheduler.SectionWriter {
+        private final CompiledSchematic compiled;
+        private final BlockData[] palette;
+        private final org.bukkit.World world;
+        private final int baseX;
+        private final int baseY;
+        private final int baseZ;
+
+        private CompiledWriter(CompiledSchematic compiled, BlockData[] palette, org.bukkit.World world, int baseX, int baseY, int baseZ) {
+            this.compiled = compiled;
+            this.palette = palette;
+            this.world = world;
+            this.baseX = baseX;
+            this.baseY = baseY;
+            this.baseZ = baseZ;
+        }
+
+        @Override
+        public void write(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            for (int y = minY; y < maxY; y++) {
+                for (int z = minZ; z < maxZ; z++) {
+                    for (int x = minX; x < maxX; x++) {
+                        BlockData data = palette[compiled.getBlockIndex(x, y, z)];
+                        if (data != null) {
+                            world.getBlockAt(baseX + x, baseY + y, baseZ + z).setBlockData(data, false);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Places blocks from a WorldEdit clipboard through one edit session per section, then copies entities at the end
+     */
+    private static class ClipboardWriter implements PasteScheduler.SectionWriter {
+        private final ClipboardCache cache;
+        private final Clipboard clipboard;
+        private final com.sk89q.worldedit.world.World world;
+        private final BlockVector3 to;
+        private EditSession editSession;
+
+        private ClipboardWriter(ClipboardCache cache, Clipboard clipboard, com.sk89q.worldedit.world.World world, BlockVector3 to) {
+            this.cache = cache;
+            this.clipboard = clipboard;
+            this.world = world;
+            this.to = to;
+        }
+
+        @Override
+        public void write(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            if (editSession == null) {
+                editSession = WorldEdit.getInstance().newEditSession(world);
+            }
+
+            BlockVector3 min = clipboard.getMinimumPoint();
+            BlockVector3 offset = to.subtract(clipboard.getOrigin());
+            try {
+                for (int y = minY; y < maxY; y++) {
+                    for (int z = minZ; z < maxZ; z++) {
+                        for (int x = minX; x < maxX; x++) {
+                            BlockVector3 position = min.add(x, y, z);
+                            BaseBlock block = clipboard.getFullBlock(position);
+                            if (block.getBlockType() != BlockTypes.AIR) {
+                                editSession.setBlock(position.add(offset), block);
+                            }
+                        }
+                    }
+                }
+            } catch (MaxChangedBlocksException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (editSession != null) {
+                editSession.close();
+                editSession = null;
+            }
+        }
+
+        @Override
+        public void finish() {
+            if (clipboard.getEntities().isEmpty()) {
+                return;
+            }
+
+            try (EditSession entitySession = WorldEdit.getInstance().newEditSession(world)) {
+                // Entities only; the mask skips every block
+                ForwardExtentCopy copy = new ForwardExtentCopy(clipboard, clipboard.getRegion(), clipboard.getOrigin(), entitySession, to);
+                copy.setSourceMask(Masks.alwaysFalse());
+                copy.setCopyingEntities(true);
+                copy.setCopyingBiomes(false);
+                Operations.complete(copy);
+            } catch (WorldEditException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            flush();
+            cache.release(clipboard);
+        }
+    }
+
+    /**
+     * Stop watching the schematics folder and warming up schematics
+     */
+    public void shutdown() {
+        warmup.shutdown();
+        if (watcher != null) {
+            watcher.shutdown();
+            watcher = null;
+        }
+    }
+
+    public PasteScheduler getPasteScheduler() {
+        return pasteScheduler;
+    }
+
+    private long getClipboardCacheLimit() {
+        return plugin.getConfig().getLong("schematic-cache.max-memory-mb", 256) * 1024L * 1024L;
+    }
+
+    public ClipboardCache getClipboardCache() {
+        return clipboardCache;
+    }
+
+    public String getSchematicForMap(String mapName) {
+        return mapToSchematic.get(mapName);
     }
 
     public Map<String, String> getAllMaps() {
         return new HashMap<>(mapToSchematic);
     }
+
+    /**
+     * Get the map catalog as JSON, each map holding its "schematic". Other catalog fields are
+     * no longer kept, and the object is built on every call.
+     * @deprecated Use {@link #getAllMaps()}
+     */
+    @Deprecated
+    public JsonObject getMapData() {
+        JsonObject data = new JsonObject();
+        for (Map.Entry<String, String> map : getAllMaps().entrySet()) {
+            JsonObject mapInfo = new JsonObject();
+            mapInfo.addProperty("schematic", map.getValue());
+            data.add(map.getKey(), mapInfo);
+        }
+        return data;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,219 @@
+package com.stufy.fragmc.icedspear.managers;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+import com.stufy.fragmc.icedspear.schematic.SchematicCompiler;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Stores schematics by the SHA-256 of their content, so re-imported or renamed maps share one file.
+ * Schematic names are resolved through index.yml; blobs live in store/&lt;hash&gt;.schem (or .schematic).
+ */
+public class SchematicStore {
+    private final IcedSpear plugin;
+    private final File storeFolder;
+    private final File indexFile;
+
+    // Schematic name -> blob file name (hash plus extension)
+    private final Map<String, String> index;
+
+    public SchematicStore(IcedSpear plugin, File schematicsFolder) {
+        this.plugin = plugin;
+        this.storeFolder = new File(schematicsFolder, "store");
+        this.indexFile = new File(schematicsFolder, "index.yml");
+        this.index = new HashMap<>();
+
+        storeFolder.mkdirs();
+        loadIndex();
+    }
+
+    private void loadIndex() {
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(indexFile);
+        ConfigurationSection section = config.getConfigurationSection("schematics");
+        if (section == null) {
+            return;
+        }
+
+        for (String name : section.getKeys(false)) {
+            String blob = section.getString(name);
+            if (blob != null && new File(storeFolder, blob).exists()) {
+                index.put(name, blob);
+            } else {
+                plugin.getLogger().warning("Stored schematic for " + name + " is missing, dropping it from the index");
+            }
+        }
+    }
+
+    private void saveIndex() {
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(indexFile);
+        config.set("schematics", null);
+        for (Map.Entry<String, String> entry : new TreeMap<>(index).entrySet()) {
+            config.set("schematics." + entry.getKey(), entry.getValue());
+        }
+
+        try {
+            File temp = new File(indexFile.getPath() + ".tmp");
+            config.save(temp);
+            Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not save schematics/index.yml: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the stored file of a schematic
+     * @param name The schematic name
+     * @return The blob, or null if the name is not in the store
+     */
+    public synchronized File getFile(String name) {
+        String blob = index.get(name);
+        return blob != null ? new File(storeFolder, blob) : null;
+    }
+
+    /**
+     * Get the content hash a schematic name points at
+     * @param name The schematic name
+     * @return The hash, or null if the name is not in the store
+     */
+    public synchronized String getHash(String name) {
+        String blob = index.get(name);
+        return blob != null ? stripExtension(blob) : null;
+    }
+
+    /**
+     * Check if any schematic name still points at a hash
+     */
+    public synchronized boolean isReferenced(String hash) {
+        for (String blob : index.values()) {
+            if (stripExtension(blob).equals(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized Set<String> getNames() {
+        return new HashSet<>(index.keySet());
+    }
+
+    /**
+     * Store a schematic file under a name. Content that is already stored is not written again.
+     * @param name The schematic name
+     * @param source The file to store
+     * @param move Whether to remove the source file afterwards
+     * @return The content hash
+     * @throws IOException If the file could not be read or stored
+     */
+    public synchronized String put(String name, File source, boolean move) throws IOException {
+        String hash = hash(source);
+        String extension = source.getName().endsWith(".schematic") ? ".schematic" : ".schem";
+        File blob = new File(storeFolder, hash + extension);
+
+        if (!blob.exists()) {
+            File temp = new File(storeFolder, hash + extension + ".tmp");
+            Files.copy(source.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp.toPath(), blob.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        if (move) {
+            Files.deleteIfExists(source.toPath());
+        }
+
+        String previous = index.put(name, blob.getName());
+        if (!blob.getName().equals(previous)) {
+            saveIndex();
+            if (previous != null) {
+                deleteIfUnreferenced(previous);
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Remove a schematic name, deleting its content if no other name uses it
+     * @param name The schematic name
+     * @return true if the name was in the store
+     */
+    public synchronized boolean remove(String name) {
+        String blob = index.remove(name);
+        if (blob == null) {
+            return false;
+        }
+
+        saveIndex();
+        deleteIfUnreferenced(blob);
+        return true;
+    }
+
+    /**
+     * Move schematic files lying loose in a folder into the store, named after the file.
+     * Every move is logged with where the file went, since the original is deleted.
+     * @param folder The folder to take .schem and .schematic files from
+     */
+    public void importLooseFiles(File folder) {
+        File[] files = folder.listFiles((dir, fileName) -> fileName.endsWith(".schem") || fileName.endsWith(".schematic"));
+        if (files == null || files.length == 0) {
+            return;
+        }
+
+        int moved = 0;
+        for (File file : files) {
+            String name = stripExtension(file.getName());
+            try {
+                put(name, file, true);
+                moved++;
+                plugin.getLogger().info("Moved " + file.getPath() + " to " + getFile(name).getPath()
+                        + " (schematic \"" + name + "\")");
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to move " + file.getPath() + " into the schematic store, left it in place: " + e.getMessage());
+            }
+        }
+
+        plugin.getLogger().info("Moved " + moved + " of " + files.length + " loose schematic files into " + storeFolder.getPath()
+                + "; use the schematic names above to refer to them");
+    }
+
+    private void deleteIfUnreferenced(String blob) {
+        if (index.containsValue(blob)) {
+            return;
+        }
+
+        File file = new File(storeFolder, blob);
+        SchematicCompiler.getOutputFile(file).delete();
+        file.delete();
+    }
+
+    private String hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static String stripExtension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+}
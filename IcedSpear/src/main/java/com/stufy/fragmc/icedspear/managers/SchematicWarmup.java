@@ -0,0 +1,100 @@
+package com.stufy.fragmc.icedspear.managers;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses and scans catalog schematics in parallel ahead of time, so the first instance of
+ * every map finds its clipboard and metadata already cached.
+ */
+public class SchematicWarmup {
+    private final IcedSpear plugin;
+    private final SchematicManager schematicManager;
+    private ForkJoinPool pool;
+
+    public SchematicWarmup(IcedSpear plugin, SchematicManager schematicManager) {
+        this.plugin = plugin;
+        this.schematicManager = schematicManager;
+    }
+
+    /**
+     * Warm up schematics in the background. Schematics sharing the same content are only parsed once.
+     * @param schematicNames The schematics to warm up
+     */
+    public synchronized void start(Collection<String> schematicNames) {
+        // One schematic name per stored content; the rest hit the cache anyway
+        Map<String, String> byHash = new LinkedHashMap<>();
+        for (String schematicName : schematicNames) {
+            String hash = schematicManager.getSchematicHash(schematicName);
+            if (hash != null && schematicManager.getCachedMetadata(schematicName) == null) {
+                byHash.putIfAbsent(hash, schematicName);
+            }
+        }
+
+        if (byHash.isEmpty()) {
+            return;
+        }
+
+        if (pool == null) {
+            int threads = plugin.getConfig().getInt("schematic-warmup.threads", 0);
+            if (threads <= 0) {
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+
+            pool = new ForkJoinPool(threads, forkJoinPool -> {
+                ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                worker.setName("IcedSpear-Warmup-" + worker.getPoolIndex());
+                worker.setDaemon(true);
+                return worker;
+            }, null, false);
+        }
+
+        int total = byHash.size();
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        plugin.getLogger().info("Warming up " + total + " schematics on " + pool.getParallelism() + " threads");
+
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (String schematicName : byHash.values()) {
+            tasks.add(CompletableFuture.runAsync(() -> {
+                try {
+                    if (schematicManager.getMetadata(schematicName) == null) {
+                        failed.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    plugin.getLogger().warning("Failed to warm up schematic " + schematicName + ": " + e.getMessage());
+                    failed.incrementAndGet();
+                }
+
+                // Report roughly every 10%
+                int count = done.incrementAndGet();
+                if (count < total && count * 10 / total != (count - 1) * 10 / total) {
+                    plugin.getLogger().info("Schematic warm-up: " + count + "/" + total);
+                }
+            }, pool));
+        }
+
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).whenComplete((result, error) -> {
+            ClipboardCache cache = schematicManager.getClipboardCache();
+            plugin.getLogger().info("Warmed up " + (total - failed.get()) + "/" + total + " schematics in "
+                    + (System.currentTimeMillis() - start) + "ms (" + cache.size() + " clipboards, "
+                    + cache.getUsedBytes() / (1024 * 1024) + "MB cached)");
+        });
+    }
+
+    /**
+     * Stop warming up, abandoning schematics that have not been started
+     */
+    public synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.stufy.fragmc.icedspear.managers;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Watches the schematics folder for schematic files being dropped in. Events are debounced per
+ * schematic, then the file is moved into the content-addressed store and, if the catalog uses it,
+ * parsed in the background so the next instance does not pay for a cold parse.
+ */
+public class SchematicWatcher {
+    private final IcedSpear plugin;
+    private final SchematicManager schematicManager;
+    private final Path folder;
+    private final ScheduledExecutorService executor;
+
+    // Schematic name -> pending reload, replaced on every new event for that schematic
+    private final Map<String, ScheduledFuture<?>> pending;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    public SchematicWatcher(IcedSpear plugin, SchematicManager schematicManager, File folder) {
+        this.plugin = plugin;
+        this.schematicManager = schematicManager;
+        this.folder = folder.toPath();
+        this.pending = new ConcurrentHashMap<>();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread worker = new Thread(runnable, "IcedSpear-SchematicReload");
+            worker.setDaemon(true);
+            return worker;
+        });
+    }
+
+    /**
+     * Start watching the folder
+     */
+    public void start() {
+        try {
+            watchService = folder.getFileSystem().newWatchService();
+            folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not watch the schematics folder: " + e.getMessage());
+            return;
+        }
+
+        thread = new Thread(this::run, "IcedSpear-SchematicWatcher");
+        thread.setDaemon(true);
+        thread.start();
+        plugin.getLogger().info("Watching " + folder + " for schematic changes");
+    }
+
+    private void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were lost, pick up whatever is lying in the folder
+                    String[] fileNames = folder.toFile().list();
+                    if (fileNames != null) {
+                        for (String fileName : fileNames) {
+                            handleFile(fileName);
+                        }
+                    }
+                    continue;
+                }
+
+                handleFile(event.context().toString());
+            }
+
+            if (!key.reset()) {
+                plugin.getLogger().warning("Schematics folder is no longer accessible, stopped watching it");
+                return;
+            }
+        }
+    }
+
+    private void handleFile(String fileName) {
+        if (fileName.endsWith(".schem")) {
+            schedule(fileName.substring(0, fileName.length() - ".schem".length()));
+        } else if (fileName.endsWith(".schematic")) {
+            schedule(fileName.substring(0, fileName.length() - ".schematic".length()));
+        }
+    }
+
+    private void schedule(String schematicName) {
+        // Copies and editors write in several steps; wait until the file has been quiet for a while
+        long debounce = Math.max(0, plugin.getConfig().getLong("schematic-watcher.debounce-ms", 1000));
+
+        pending.compute(schematicName, (name, previous) -> {
+            if (previous != null) {
+                previous.cancel(false);
+            }
+
+            try {
+                return executor.schedule(() -> {
+                    pending.remove(name);
+                    reload(name);
+                }, debounce, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                return null;
+            }
+        });
+    }
+
+    private void reload(String schematicName) {
+        // Deletions (including the store moving the file away) leave nothing to do
+        if (!schematicManager.storeLooseSchematic(schematicName)) {
+            return;
+        }
+
+        plugin.getLogger().info("Schematic changed: " + schematicName);
+
+        if (!schematicManager.getAllMaps().containsValue(schematicName)) {
+            return;
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            if (schematicManager.getMetadata(schematicName) != null) {
+                plugin.getLogger().info("Reloaded schematic " + schematicName + " in " + (System.currentTimeMillis() - start) + "ms");
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to reload schematic " + schematicName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stop watching and drop pending reloads
+     */
+    public void shutdown() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+                // Closing anyway
+            }
+        }
+
+        executor.shutdownNow();
+    }
+}
@@ -1,8 +1,11 @@
 package com.stufy.fragmc.icedspear.managers;
 
 import com.stufy.fragmc.icedspear.IcedSpear;
+import com.stufy.fragmc.icedspear.models.AttemptOutcome;
 import com.stufy.fragmc.icedspear.models.MapInstance;
 import com.stufy.fragmc.icedspear.models.Party;
+import com.stufy.fragmc.icedspear.models.RunSession;
+import com.stufy.fragmc.icedspear.models.RunState;
 import net.md_5.bungee.api.ChatMessageType;
 import net.md_5.bungee.api.chat.TextComponent;
 import org.bukkit.Bukkit;
@@ -14,53 +17,71 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class TimerManager {
+    private static final String RUNNING_PREFIX = ChatColor.YELLOW + "⏱ Time: " + ChatColor.WHITE;
+    private static final String FINISHED_PREFIX = ChatColor.GREEN + "✓ Finished: " + ChatColor.WHITE;
+    private static final String FINISHED_SUFFIX = ChatColor.GRAY + " | Type " + ChatColor.YELLOW + "/map leave" + ChatColor.GRAY + " when ready";
+    private static final TextComponent WAITING_ACTIONBAR = new TextComponent(ChatColor.GRAY + "Move to start timer...");
+
+    // The client hides an action bar after about three seconds, so unchanged ones are resent before that
+    private static final int ACTIONBAR_REFRESH_TICKS = 40;
+
     private final IcedSpear plugin;
     private final LeaderboardManager leaderboardManager;
     private final PartyManager partyManager;
-    private final MapManager mapManager;
-
-    // Track player timers: Player UUID -> Start time in milliseconds
-    private final Map<UUID, Long> activeTimers;
-
-    // Track players who have finished: Player UUID -> Finish time
-    private final Map<UUID, Long> finishedPlayers;
 
-    // Track players who have moved (started their timer)
-    private final Set<UUID> hasStarted;
+    // Player UUID -> run in the instance they are in
+    private final Map<UUID, RunSession> sessions;
 
     // Actionbar update task
     private BukkitTask actionbarTask;
 
-    public TimerManager(IcedSpear plugin, LeaderboardManager leaderboardManager, PartyManager partyManager, MapManager mapManager) {
+    // Reused by every action bar update
+    private final StringBuilder actionbarBuilder = new StringBuilder(64);
+
+    public TimerManager(IcedSpear plugin, LeaderboardManager leaderboardManager, PartyManager partyManager) {
         this.plugin = plugin;
         this.leaderboardManager = leaderboardManager;
         this.partyManager = partyManager;
-        this.mapManager = mapManager;
-        this.activeTimers = new ConcurrentHashMap<>();
-        this.finishedPlayers = new ConcurrentHashMap<>();
-        this.hasStarted = ConcurrentHashMap.newKeySet();
+        this.sessions = new ConcurrentHashMap<>();
 
         startActionbarUpdater();
     }
 
     /**
-     * Start the timer for a player (called on first movement)
+     * Start a session when a player enters an instance. A run still going in another
+     * instance counts as abandoned.
      */
-    public void startTimer(Player player) {
-        UUID playerId = player.getUniqueId();
-
-        // Don't start if already finished
-        if (finishedPlayers.containsKey(playerId)) {
-            return;
+    public RunSession startSession(UUID playerId, MapInstance instance) {
+        RunSession session = new RunSession(playerId, instance);
+        RunSession previous = sessions.put(playerId, session);
+        if (previous != null) {
+            endSession(previous);
         }
 
-        // Don't start if already started
-        if (activeTimers.containsKey(playerId)) {
+        // Have the player's time ready by the time they finish
+        leaderboardManager.prefetch(instance.getMapName(), playerId);
+        return session;
+    }
+
+    /**
+     * Get a player's session
+     * @return The session, or null if the player is not in a map
+     */
+    public RunSession getSession(UUID playerId) {
+        return sessions.get(playerId);
+    }
+
+    /**
+     * Start the timer for a player (called on first movement)
+     */
+    public void startTimer(Player player, RunSession session) {
+        // Don't start if already started or finished
+        if (session.getState() != RunState.WAITING) {
             return;
         }
 
-        activeTimers.put(playerId, System.currentTimeMillis());
-        hasStarted.add(playerId);
+        session.start(System.currentTimeMillis());
+        plugin.getGhostManager().startRun(player, session);
 
         player.sendMessage(ChatColor.GREEN + "Timer started! Touch a diamond block to finish.");
     }
@@ -68,35 +89,18 @@ public class TimerManager {
     /**
      * Stop the timer when player touches diamond block
      */
-    public void stopTimer(Player player) {
-        UUID playerId = player.getUniqueId();
-
-        // Check if player has an active timer
-        if (!activeTimers.containsKey(playerId)) {
+    public void stopTimer(Player player, RunSession session) {
+        // Only a running timer can be stopped
+        if (session.getState() != RunState.RUNNING) {
             return;
         }
 
-        // Already finished
-        if (finishedPlayers.containsKey(playerId)) {
-            return;
-        }
-
-        long startTime = activeTimers.get(playerId);
+        UUID playerId = player.getUniqueId();
         long endTime = System.currentTimeMillis();
-        long timeTaken = endTime - startTime;
-
-        // Mark as finished
-        finishedPlayers.put(playerId, timeTaken);
-        activeTimers.remove(playerId);
-
-        // Get map instance
-        String instanceId = mapManager.getPlayerInstance(playerId);
-        if (instanceId == null) return;
-
-        MapInstance instance = mapManager.getInstance(instanceId);
-        if (instance == null) return;
+        long timeTaken = session.finish(endTime);
 
-        String mapName = instance.getMapName();
+        String mapName = session.getMapName();
+        plugin.getAttemptHistory().record(mapName, playerId, timeTaken, endTime, AttemptOutcome.FINISHED);
 
         // Format time
         String formattedTime = formatTime(timeTaken);
@@ -112,13 +116,25 @@ public class TimerManager {
         player.sendMessage(ChatColor.GOLD + "▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬▬");
         player.sendMessage("");
 
+        // Keep the ghost only if this beats the time already on the leaderboard
+        long previousBest = leaderboardManager.getPlayerTime(mapName, playerId);
+        plugin.getGhostManager().finishRun(player, session, timeTaken, previousBest < 0 || timeTaken < previousBest);
+
         // Add to leaderboard
         int rank = leaderboardManager.addTime(mapName, playerId, player.getName(), timeTaken);
 
-        if (rank <= 10) {
+        if (rank > 0 && rank <= 10) {
             player.sendMessage(ChatColor.GOLD + "★ " + ChatColor.GREEN + "New personal best! Rank #" + rank + " on " + mapName);
         }
 
+        // Percentiles mean little until a map has a few runs behind it
+        long runs = leaderboardManager.getCompletionCount(mapName);
+        if (runs >= 10) {
+            int beaten = (int) leaderboardManager.getPercentSlowerThan(mapName, timeTaken);
+            player.sendMessage(ChatColor.YELLOW + "You beat " + ChatColor.WHITE + beaten + "%" + ChatColor.YELLOW + " of "
+                    + runs + " runs" + ChatColor.GRAY + " (median " + formatTime(leaderboardManager.getTimeAtPercentile(mapName, 50)) + ")");
+        }
+
         // Broadcast to party if in one
         String partyCode = partyManager.getPlayerParty(playerId);
         if (partyCode != null) {
@@ -139,99 +155,152 @@ public class TimerManager {
      * Reset player when they leave map
      */
     public void resetPlayer(UUID playerId) {
-        activeTimers.remove(playerId);
-        finishedPlayers.remove(playerId);
-        hasStarted.remove(playerId);
+        RunSession session = sessions.remove(playerId);
+        if (session != null) {
+            endSession(session);
+        }
+    }
+
+    // A run still going is recorded as abandoned
+    private void endSession(RunSession session) {
+        if (session.getState() == RunState.RUNNING) {
+            long now = System.currentTimeMillis();
+            plugin.getAttemptHistory().record(session.getMapName(), session.getPlayerId(),
+                    session.getElapsed(now), now, AttemptOutcome.ABANDONED);
+        }
+        plugin.getGhostManager().cancelRun(session);
     }
 
     /**
      * Check if player has finished
      */
     public boolean hasFinished(UUID playerId) {
-        return finishedPlayers.containsKey(playerId);
+        RunSession session = sessions.get(playerId);
+        return session != null && session.getState() == RunState.FINISHED;
     }
 
     /**
      * Check if player has started
      */
     public boolean hasStarted(UUID playerId) {
-        return hasStarted.contains(playerId);
+        RunSession session = sessions.get(playerId);
+        return session != null && session.getState() != RunState.WAITING;
     }
 
     /**
      * Get current time for a player
      */
     public long getCurrentTime(UUID playerId) {
-        if (!activeTimers.containsKey(playerId)) {
-            return 0;
-        }
-
-        long startTime = activeTimers.get(playerId);
-        return System.currentTimeMillis() - startTime;
+        RunSession session = sessions.get(playerId);
+        return session != null && session.getState() == RunState.RUNNING ? session.getElapsed(System.currentTimeMillis()) : 0;
     }
 
     /**
      * Format milliseconds to readable time
      */
     private String formatTime(long milliseconds) {
+        StringBuilder builder = new StringBuilder(12);
+        appendTime(builder, milliseconds);
+        return builder.toString();
+    }
+
+    /**
+     * Append m:ss.cc, or s.cc under a minute, without going through String.format
+     */
+    private static void appendTime(StringBuilder builder, long milliseconds) {
         long totalSeconds = milliseconds / 1000;
         long minutes = totalSeconds / 60;
         long seconds = totalSeconds % 60;
-        long millis = (milliseconds % 1000) / 10; // Get centiseconds
+        long centis = (milliseconds % 1000) / 10;
 
         if (minutes > 0) {
-            return String.format("%d:%02d.%02d", minutes, seconds, millis);
-        } else {
-            return String.format("%d.%02d", seconds, millis);
+            builder.append(minutes).append(':');
+            if (seconds < 10) {
+                builder.append('0');
+            }
         }
+        builder.append(seconds).append('.');
+        if (centis < 10) {
+            builder.append('0');
+        }
+        builder.append(centis);
     }
 
     /**
      * Start the actionbar updater task
      */
     private void startActionbarUpdater() {
-        actionbarTask = Bukkit.getScheduler().runTaskTimer(plugin, () -> {
-            for (Player player : Bukkit.getOnlinePlayers()) {
-                UUID playerId = player.getUniqueId();
-
-                // Check if player is in a map
-                String instanceId = mapManager.getPlayerInstance(playerId);
-                if (instanceId == null) continue;
-
-                String actionbarText;
-
-                if (finishedPlayers.containsKey(playerId)) {
-                    // Player has finished
-                    long finishTime = finishedPlayers.get(playerId);
-                    actionbarText = ChatColor.GREEN + "✓ Finished: " +
-                            ChatColor.WHITE + formatTime(finishTime) +
-                            ChatColor.GRAY + " | Type " +
-                            ChatColor.YELLOW + "/map leave" +
-                            ChatColor.GRAY + " when ready";
-
-                } else if (activeTimers.containsKey(playerId)) {
-                    // Player has active timer
-                    long currentTime = getCurrentTime(playerId);
-                    actionbarText = ChatColor.YELLOW + "⏱ Time: " +
-                            ChatColor.WHITE + formatTime(currentTime);
-
-                } else {
-                    // Player hasn't started yet
-                    actionbarText = ChatColor.GRAY + "Move to start timer...";
+        actionbarTask = Bukkit.getScheduler().runTaskTimer(plugin, this::updateActionbars, 0L, 5L); // Update every 5 ticks (4 times per second)
+    }
+
+    /**
+     * Send the action bar of every player in a map. Only sessions are walked, so players in the
+     * lobby cost nothing, and an unchanged bar is only resent before the client would hide it.
+     */
+    private void updateActionbars() {
+        int tick = Bukkit.getCurrentTick();
+        long now = System.currentTimeMillis();
+
+        for (RunSession session : sessions.values()) {
+            Player player = Bukkit.getPlayer(session.getPlayerId());
+            if (player == null) continue;
+
+            TextComponent component;
+            boolean changed = false;
+
+            if (session.getState() == RunState.FINISHED) {
+                // Player has finished; the text never changes, so it is built once
+                component = session.getFinishedActionbar();
+                if (component == null) {
+                    actionbarBuilder.setLength(0);
+                    actionbarBuilder.append(FINISHED_PREFIX);
+                    appendTime(actionbarBuilder, session.getFinishTime());
+                    actionbarBuilder.append(FINISHED_SUFFIX);
+                    component = new TextComponent(actionbarBuilder.toString());
+                    session.setFinishedActionbar(component);
+                }
+
+            } else if (session.getState() == RunState.RUNNING) {
+                // Player has active timer; one component per session, its text replaced when the time shown changes
+                actionbarBuilder.setLength(0);
+                actionbarBuilder.append(RUNNING_PREFIX);
+                appendTime(actionbarBuilder, session.getElapsed(now));
+
+                component = session.getTimerActionbar();
+                if (component == null) {
+                    component = new TextComponent(actionbarBuilder.toString());
+                    session.setTimerActionbar(component);
+                } else if (!component.getText().contentEquals(actionbarBuilder)) {
+                    component.setText(actionbarBuilder.toString());
+                    changed = true;
                 }
 
-                // Send actionbar
-                player.spigot().sendMessage(ChatMessageType.ACTION_BAR, new TextComponent(actionbarText));
+            } else {
+                // Player hasn't started yet
+                component = WAITING_ACTIONBAR;
             }
-        }, 0L, 5L); // Update every 5 ticks (4 times per second)
+
+            if (!changed && component == session.getLastActionbar()
+                    && tick - session.getLastActionbarTick() < ACTIONBAR_REFRESH_TICKS) {
+                continue;
+            }
+
+            player.spigot().sendMessage(ChatMessageType.ACTION_BAR, component);
+            session.setLastActionbar(component, tick);
+        }
     }
 
     /**
-     * Stop the actionbar updater
+     * Stop the actionbar updater and record every run still going as abandoned
      */
     public void shutdown() {
         if (actionbarTask != null) {
             actionbarTask.cancel();
         }
+
+        for (RunSession session : sessions.values()) {
+            endSession(session);
+        }
+        sessions.clear();
     }
 }
\ No newline at end of file
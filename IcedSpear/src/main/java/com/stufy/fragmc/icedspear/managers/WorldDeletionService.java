@@ -0,0 +1,222 @@
+package com.stufy.fragmc.icedspear.managers;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+import org.bukkit.Bukkit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Deletes unloaded instance world folders on a small dedicated I/O pool,
+ * retrying with backoff, and sweeps leftovers from earlier runs at startup.
+ */
+public class WorldDeletionService {
+    private static final String INSTANCE_MARKER = ".icedspear-instance";
+
+    // Names used by instance worlds created before the marker file existed; only swept when opted in
+    private static final Pattern LEGACY_INSTANCE_NAME = Pattern.compile(".+_([0-9a-f]{8}|party-\\d{4})");
+
+    private final IcedSpear plugin;
+    private final ConfigManager configManager;
+    private final ScheduledExecutorService executor;
+
+    // World folder names with a deletion queued or running
+    private final Set<String> pendingDeletions;
+
+    public WorldDeletionService(IcedSpear plugin, ConfigManager configManager) {
+        this.plugin = plugin;
+        this.configManager = configManager;
+        this.pendingDeletions = ConcurrentHashMap.newKeySet();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(
+                Math.max(1, configManager.getWorldCleanupThreads()), runnable -> {
+                    Thread thread = new Thread(runnable, "IcedSpear-WorldIO-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.setRemoveOnCancelPolicy(true);
+        this.executor = pool;
+    }
+
+    /**
+     * Mark a world folder as a disposable instance world so a later startup sweep may delete it
+     */
+    public void markInstanceWorld(File worldFolder) {
+        submit(() -> {
+            try {
+                Files.createDirectories(worldFolder.toPath());
+                Files.write(worldFolder.toPath().resolve(INSTANCE_MARKER), new byte[0]);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to mark instance world " + worldFolder.getName() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Delete an unloaded world folder in the background
+     * @param worldFolder The world folder
+     * @param delayMillis How long to wait before the first attempt, so the server can release region files
+     * @return Completes with true once the folder is gone, false if every attempt failed
+     */
+    public CompletableFuture<Boolean> deleteWorldFolder(File worldFolder, long delayMillis) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        pendingDeletions.add(worldFolder.getName());
+
+        try {
+            executor.schedule(() -> attemptDelete(worldFolder, 1, future), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            pendingDeletions.remove(worldFolder.getName());
+            future.complete(false);
+        }
+
+        return future;
+    }
+
+    private void attemptDelete(File worldFolder, int attempt, CompletableFuture<Boolean> future) {
+        String worldName = worldFolder.getName();
+
+        if (deleteRecursively(worldFolder.toPath())) {
+            pendingDeletions.remove(worldName);
+            plugin.getLogger().info("World folder deleted: " + worldName);
+            future.complete(true);
+            return;
+        }
+
+        int maxAttempts = Math.max(1, configManager.getWorldCleanupMaxAttempts());
+        if (attempt >= maxAttempts) {
+            pendingDeletions.remove(worldName);
+            plugin.getLogger().warning("Failed to delete world folder after " + attempt + " attempts: " + worldName);
+            future.complete(false);
+            return;
+        }
+
+        long backoff = 1000L << Math.min(attempt - 1, 5);
+        try {
+            executor.schedule(() -> attemptDelete(worldFolder, attempt + 1, future), backoff, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            pendingDeletions.remove(worldName);
+            future.complete(false);
+        }
+    }
+
+    /**
+     * Delete instance world folders left behind by a previous run, in parallel. Only folders
+     * carrying the instance marker are deleted, unless the name-based legacy sweep is enabled.
+     * @param legacyPrefixes Folder name prefixes that belong to IcedSpear, used by the legacy sweep
+     */
+    public void sweepLeftoverWorlds(String... legacyPrefixes) {
+        boolean legacy = configManager.isWorldCleanupLegacySweepEnabled();
+
+        File[] folders = Bukkit.getWorldContainer().listFiles(File::isDirectory);
+        if (folders == null) {
+            return;
+        }
+
+        List<CompletableFuture<Boolean>> deletions = new ArrayList<>();
+        for (File folder : folders) {
+            if (Bukkit.getWorld(folder.getName()) == null && isLeftoverInstance(folder, legacy, legacyPrefixes)) {
+                deletions.add(deleteWorldFolder(folder, 0));
+            }
+        }
+
+        if (deletions.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        plugin.getLogger().info("Removing " + deletions.size() + " leftover instance world(s)...");
+        CompletableFuture.allOf(deletions.toArray(new CompletableFuture[0])).thenRun(() -> {
+            long deleted = deletions.stream().filter(CompletableFuture::join).count();
+            plugin.getLogger().info("Removed " + deleted + "/" + deletions.size() + " leftover instance world(s) in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        });
+    }
+
+    private boolean isLeftoverInstance(File folder, boolean legacy, String... legacyPrefixes) {
+        if (new File(folder, INSTANCE_MARKER).exists()) {
+            return true;
+        }
+
+        // A name alone can match unrelated worlds, so this is opt-in
+        if (!legacy) {
+            return false;
+        }
+
+        for (String prefix : legacyPrefixes) {
+            if (folder.getName().startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return new File(folder, "level.dat").exists() && LEGACY_INSTANCE_NAME.matcher(folder.getName()).matches();
+    }
+
+    /**
+     * Check if a world folder is still queued for deletion and must not be loaded yet
+     */
+    public boolean isPendingDeletion(String worldName) {
+        return pendingDeletions.contains(worldName);
+    }
+
+    private boolean deleteRecursively(Path root) {
+        if (!Files.exists(root)) {
+            return true;
+        }
+
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    if (exc != null) {
+                        throw exc;
+                    }
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            plugin.getLogger().fine("Deleting " + root.getFileName() + " failed, will retry: " + e.getMessage());
+            return false;
+        }
+
+        return !Files.exists(root);
+    }
+
+    private void submit(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ignored) {
+            // Shutting down; the startup sweep picks up anything left behind
+        }
+    }
+
+    /**
+     * Stop accepting work and give running deletions a moment to finish
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.stufy.fragmc.icedspear.managers;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Pastes each schematic once into a template world and creates instance worlds
+ * by copying the template's region files instead of pasting again.
+ */
+public class WorldTemplateManager {
+    static final String TEMPLATE_WORLD_PREFIX = "icedspear_template_";
+    private static final String SOURCE_MARKER = "source.txt";
+
+    // Folders copied from a template; level.dat and uid.dat are left out so every copy loads as its own world
+    private static final String[] WORLD_DATA_FOLDERS = {"region", "entities"};
+
+    // Region files are written in whole sectors; one with a partial sector is still being written
+    private static final int REGION_SECTOR_BYTES = 4096;
+    private static final long SAVE_CHECK_TICKS = 20L;
+    private static final int MAX_SAVE_CHECKS = 60;
+
+    private final IcedSpear plugin;
+    private final MapManager mapManager;
+    private final SchematicManager schematicManager;
+    private final ConfigManager configManager;
+    private final File templatesFolder;
+
+    // Content hash -> template build in progress
+    private final Map<String, CompletableFuture<File>> builds;
+
+    public WorldTemplateManager(IcedSpear plugin, MapManager mapManager, SchematicManager schematicManager, ConfigManager configManager) {
+        this.plugin = plugin;
+        this.mapManager = mapManager;
+        this.schematicManager = schematicManager;
+        this.configManager = configManager;
+        this.templatesFolder = new File(plugin.getDataFolder(), "templates");
+        this.builds = new ConcurrentHashMap<>();
+    }
+
+    public boolean isEnabled() {
+        return configManager.isWorldTemplatesEnabled();
+    }
+
+    /**
+     * Copy the template of a schematic into a new world folder, building the template first if needed
+     * @param schematicName The schematic name
+     * @param worldName The world folder to create
+     * @return Completes with true if the world folder was filled from the template
+     */
+    public CompletableFuture<Boolean> copyTemplate(String schematicName, String worldName) {
+        File worldFolder = new File(Bukkit.getWorldContainer(), worldName);
+        if (worldFolder.exists()) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return getTemplate(schematicName).thenCompose(template -> {
+            if (template == null) {
+                return CompletableFuture.completedFuture(false);
+            }
+
+            return supplyAsync(() -> {
+                try {
+                    for (String folder : WORLD_DATA_FOLDERS) {
+                        copyFolder(new File(template, folder).toPath(), new File(worldFolder, folder).toPath());
+                    }
+                    return true;
+                } catch (IOException e) {
+                    plugin.getLogger().severe("Failed to copy template " + schematicName + " to " + worldName + ": " + e.getMessage());
+                    // Leave no partial world behind so the instance falls back to a paste
+                    deleteFolder(worldFolder.toPath());
+                    return false;
+                }
+            });
+        }).exceptionally(e -> {
+            plugin.getLogger().severe("Failed to prepare template for " + schematicName + ": " + e.getMessage());
+            return false;
+        });
+    }
+
+    /**
+     * Get the template folder for a schematic, building it if it is missing or older than the schematic
+     * @param schematicName The schematic name
+     * @return Completes with the template folder, or null if it could not be built
+     */
+    public CompletableFuture<File> getTemplate(String schematicName) {
+        File schematicFile = schematicManager.getSchematicFile(schematicName);
+        String hash = schematicManager.getSchematicHash(schematicName);
+        if (schematicFile == null || hash == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Templates are shared by every schematic name with the same content
+        File template = new File(templatesFolder, hash);
+        if (isUpToDate(template, schematicFile)) {
+            return CompletableFuture.completedFuture(template);
+        }
+
+        return builds.computeIfAbsent(hash, key -> buildTemplate(schematicName, key, schematicFile, template)
+                .whenComplete((result, error) -> builds.remove(key)));
+    }
+
+    private CompletableFuture<File> buildTemplate(String schematicName, String hash, File schematicFile, File template) {
+        String worldName = TEMPLATE_WORLD_PREFIX + hash;
+        File worldFolder = new File(Bukkit.getWorldContainer(), worldName);
+        String source = sourceStamp(schematicFile);
+
+        plugin.getLogger().info("Building template world for schematic: " + schematicName);
+
+        // A folder left over from an interrupted build would make the world load without a paste
+        return supplyAsync(() -> {
+            deleteFolder(worldFolder.toPath());
+            return true;
+        }).thenCompose(ignored -> supplySync(() -> mapManager.createVoidWorld(worldName))).thenCompose(world -> {
+            if (world == null) {
+                return CompletableFuture.completedFuture(false);
+            }
+
+            // A crash mid-build leaves the world behind; the marker lets the startup sweep remove it
+            mapManager.getWorldDeletionService().markInstanceWorld(world.getWorldFolder());
+
+            return schematicManager.pasteSchematic(schematicName, new Location(world, 0, 100, 0), percent -> {
+            }).thenCompose(pasted -> supplySync(() -> {
+                world.save();
+                boolean unloaded = Bukkit.unloadWorld(world, true);
+                return pasted && unloaded;
+            }));
+        }).thenCompose(unloaded -> {
+            if (!unloaded) {
+                return CompletableFuture.completedFuture(false);
+            }
+            // Chunks are saved asynchronously, so the files may still be written after the unload
+            return awaitSaved(worldFolder.toPath());
+        }).thenCompose(built -> supplyAsync(() -> {
+            if (!built) {
+                plugin.getLogger().severe("Failed to build template world for schematic: " + schematicName);
+                deleteFolder(worldFolder.toPath());
+                return null;
+            }
+
+            Path staging = new File(templatesFolder, hash + ".tmp").toPath();
+            try {
+                deleteFolder(staging);
+                for (String folder : WORLD_DATA_FOLDERS) {
+                    copyFolder(worldFolder.toPath().resolve(folder), staging.resolve(folder));
+                }
+                Files.writeString(staging.resolve(SOURCE_MARKER), source, StandardCharsets.UTF_8);
+
+                deleteFolder(template.toPath());
+                Files.move(staging, template.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to store template for " + schematicName + ": " + e.getMessage());
+                deleteFolder(staging);
+                return null;
+            } finally {
+                deleteFolder(worldFolder.toPath());
+            }
+
+            plugin.getLogger().info("Template world ready for schematic: " + schematicName);
+            return template;
+        }));
+    }
+
+    /**
+     * Wait until the region files of an unloaded world stop changing and hold only whole sectors
+     * @param worldFolder The world folder
+     * @return Completes with false if the files were still being written after {@link #MAX_SAVE_CHECKS} checks
+     */
+    private CompletableFuture<Boolean> awaitSaved(Path worldFolder) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        checkSaved(worldFolder, null, 0, future);
+        return future;
+    }
+
+    private void checkSaved(Path worldFolder, String previous, int checks, CompletableFuture<Boolean> future) {
+        Bukkit.getScheduler().runTaskLaterAsynchronously(plugin, () -> {
+            String state = regionState(worldFolder);
+            if (state != null && state.equals(previous)) {
+                future.complete(true);
+            } else if (checks + 1 >= MAX_SAVE_CHECKS) {
+                plugin.getLogger().warning("Region files of " + worldFolder.getFileName() + " did not finish saving");
+                future.complete(false);
+            } else {
+                checkSaved(worldFolder, state, checks + 1, future);
+            }
+        }, SAVE_CHECK_TICKS);
+    }
+
+    /**
+     * Describe the size and modification time of every region file
+     * @return The description, or null if a region file is only partly written
+     */
+    private String regionState(Path worldFolder) {
+        StringBuilder state = new StringBuilder();
+        for (String folder : WORLD_DATA_FOLDERS) {
+            File[] files = worldFolder.resolve(folder).toFile().listFiles((dir, name) -> name.endsWith(".mca"));
+            if (files == null) {
+                continue;
+            }
+
+            Arrays.sort(files);
+            for (File file : files) {
+                long length = file.length();
+                if (length % REGION_SECTOR_BYTES != 0) {
+                    return null;
+                }
+                state.append(folder).append('/').append(file.getName()).append(':')
+                        .append(length).append(':').append(file.lastModified()).append(';');
+            }
+        }
+        return state.toString();
+    }
+
+    /**
+     * Delete the stored template of some schematic content so the next instance rebuilds it
+     * @param hash The content hash of the schematic
+     */
+    public void invalidate(String hash) {
+        File template = new File(templatesFolder, hash);
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> deleteFolder(template.toPath()));
+    }
+
+    private boolean isUpToDate(File template, File schematicFile) {
+        Path marker = new File(template, SOURCE_MARKER).toPath();
+        if (!Files.exists(marker)) {
+            return false;
+        }
+
+        try {
+            return Files.readString(marker, StandardCharsets.UTF_8).equals(sourceStamp(schematicFile));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private String sourceStamp(File schematicFile) {
+        return schematicFile.lastModified() + ":" + schematicFile.length();
+    }
+
+    private void copyFolder(Path source, Path target) throws IOException {
+        if (!Files.isDirectory(source)) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Path destination = target.resolve(source.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(destination);
+                } else {
+                    Files.copy(path, destination, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private void deleteFolder(Path folder) {
+        if (!Files.exists(folder)) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(folder)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to delete " + folder + ": " + e.getMessage());
+        }
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> complete(future, task));
+        return future;
+    }
+
+    private <T> CompletableFuture<T> supplySync(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Bukkit.getScheduler().runTask(plugin, () -> complete(future, task));
+        return future;
+    }
+
+    private <T> void complete(CompletableFuture<T> future, Callable<T> task) {
+        try {
+            future.complete(task.call());
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.stufy.fragmc.icedspear.models;
+
+import java.util.UUID;
+
+public class Attempt {
+    private final UUID playerId;
+    private final String mapName;
+    private final long duration; // Time in milliseconds, up to the finish or until the player left
+    private final long timestamp; // When the attempt ended
+    private final AttemptOutcome outcome;
+
+    public Attempt(UUID playerId, String mapName, long duration, long timestamp, AttemptOutcome outcome) {
+        this.playerId = playerId;
+        this.mapName = mapName;
+        this.duration = duration;
+        this.timestamp = timestamp;
+        this.outcome = outcome;
+    }
+
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    public String getMapName() {
+        return mapName;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public AttemptOutcome getOutcome() {
+        return outcome;
+    }
+}
@@ -0,0 +1,9 @@
+package com.stufy.fragmc.icedspear.models;
+
+/**
+ * How a run ended
+ */
+public enum AttemptOutcome {
+    FINISHED,
+    ABANDONED // Left the map with the timer running
+}
@@ -0,0 +1,146 @@
+package com.stufy.fragmc.icedspear.models;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Counts of completion times in log-linear buckets, in the spirit of HdrHistogram. Times below
+ * 64ms get a bucket each; above that every power of two is split into 32 buckets, so any time
+ * is known to within about 3%. Memory is fixed no matter how many runs are recorded.
+ */
+public class CompletionHistogram {
+    private static final int SUB_BUCKETS = 32;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    // Up to 2^40 ms, far beyond any run; longer times land in the last bucket
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_MAGNITUDE - 6 + 1) * SUB_BUCKETS;
+
+    private final long[] counts;
+    private long totalCount;
+
+    public CompletionHistogram() {
+        this.counts = new long[BUCKET_COUNT];
+    }
+
+    /**
+     * Record a completion time
+     * @param time Time in milliseconds
+     */
+    public void record(long time) {
+        counts[bucketOf(time)]++;
+        totalCount++;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Get the share of recorded runs that were slower than a time
+     * @param time Time in milliseconds
+     * @return Percentage between 0 and 100
+     */
+    public double getPercentSlowerThan(long time) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long slower = 0;
+        for (int i = bucketOf(time) + 1; i < counts.length; i++) {
+            slower += counts[i];
+        }
+        return slower * 100.0 / totalCount;
+    }
+
+    /**
+     * Get the time that a percentage of runs were at or below, e.g. 50 for the median
+     * @param percentile Percentile between 0 and 100
+     * @return Time in milliseconds, or -1 if nothing was recorded
+     */
+    public long getTimeAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return -1;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return highestTimeIn(i);
+            }
+        }
+        return highestTimeIn(counts.length - 1);
+    }
+
+    private static int bucketOf(long time) {
+        if (time < LINEAR_LIMIT) {
+            return (int) Math.max(0, time);
+        }
+
+        int magnitude = Math.min(63 - Long.numberOfLeadingZeros(time), MAX_MAGNITUDE);
+        if (magnitude == MAX_MAGNITUDE && time >= 1L << (MAX_MAGNITUDE + 1)) {
+            return BUCKET_COUNT - 1;
+        }
+
+        // Top five bits below the leading one pick the sub-bucket
+        int subBucket = (int) (time >> (magnitude - 5)) - SUB_BUCKETS;
+        return LINEAR_LIMIT + (magnitude - 6) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestTimeIn(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+
+        int magnitude = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 6;
+        int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((long) (subBucket + 1) << (magnitude - 5)) - 1;
+    }
+
+    /**
+     * Copy the bucket counts, so they can be written from another thread
+     */
+    public long[] snapshot() {
+        return counts.clone();
+    }
+
+    /**
+     * Write the non-empty buckets of a copy taken with {@link #snapshot()}
+     */
+    public static void write(DataOutput out, long[] counts) throws IOException {
+        int used = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                used++;
+            }
+        }
+
+        out.writeShort(used);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                out.writeShort(i);
+                out.writeLong(counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Read a histogram written by {@link #write(DataOutput, long[])}
+     */
+    public static CompletionHistogram read(DataInput in) throws IOException {
+        CompletionHistogram histogram = new CompletionHistogram();
+        int used = in.readUnsignedShort();
+        for (int i = 0; i < used; i++) {
+            int bucket = in.readUnsignedShort();
+            long count = in.readLong();
+            if (bucket >= BUCKET_COUNT || count < 0) {
+                throw new IOException("Bad histogram bucket " + bucket);
+            }
+            histogram.counts[bucket] += count;
+            histogram.totalCount += count;
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,176 @@
+package com.stufy.fragmc.icedspear.models;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A recorded run: one frame per tick in which the player moved, relative to the map's spawn.
+ * Frames are written by {@link GhostRecorder}. Each starts with a varint holding the number
+ * of idle ticks before it and a bit per changed component, followed by those components as
+ * zigzag varint deltas: position in 1/256 blocks, yaw and pitch in 1/256 turns.
+ */
+public class Ghost {
+    static final int POSITION_SCALE = 256;
+    static final float ANGLE_SCALE = 256 / 360f;
+    static final int COMPONENTS = 5;
+
+    private static final int MAGIC = 0x49534747; // "ISGG"
+    private static final int FORMAT = 1;
+    private static final int MAX_FRAME_BYTES = 1 << 24;
+
+    private final long time;
+    private final int ticks;
+    private final byte[] frames;
+
+    public Ghost(long time, int ticks, byte[] frames) {
+        this.time = time;
+        this.ticks = ticks;
+        this.frames = frames;
+    }
+
+    /**
+     * Get the run's time in milliseconds
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Get the number of ticks the run took
+     */
+    public int getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Start reading the frames from the beginning
+     */
+    public Cursor cursor() {
+        return new Cursor(frames);
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeLong(time);
+        out.writeInt(ticks);
+        out.writeInt(frames.length);
+        out.write(frames);
+    }
+
+    public static Ghost read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+            throw new IOException("Not a ghost file");
+        }
+
+        long time = in.readLong();
+        int ticks = in.readInt();
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Bad frame length " + length);
+        }
+
+        byte[] frames = new byte[length];
+        in.readFully(frames);
+        return new Ghost(time, ticks, frames);
+    }
+
+    /**
+     * Plays a ghost back one tick at a time without decoding it up front
+     */
+    public static class Cursor {
+        private final byte[] frames;
+        private int offset;
+
+        // Position and rotation after the last applied frame
+        private int x, y, z, yaw, pitch;
+
+        // Ticks to wait before the next frame, or -1 once the frames are used up
+        private int wait;
+        private int flags;
+
+        private Cursor(byte[] frames) {
+            this.frames = frames;
+            readHeader();
+        }
+
+        /**
+         * Advance one tick
+         * @return true if the ghost moved this tick
+         */
+        public boolean tick() {
+            if (wait < 0) {
+                return false;
+            }
+            if (wait > 0) {
+                wait--;
+                return false;
+            }
+
+            x += (flags & 1) != 0 ? readDelta() : 0;
+            y += (flags & 2) != 0 ? readDelta() : 0;
+            z += (flags & 4) != 0 ? readDelta() : 0;
+            yaw += (flags & 8) != 0 ? readDelta() : 0;
+            pitch += (flags & 16) != 0 ? readDelta() : 0;
+
+            readHeader();
+            return true;
+        }
+
+        /**
+         * Check if every frame has been played
+         */
+        public boolean isDone() {
+            return wait < 0;
+        }
+
+        public double getX() {
+            return (double) x / POSITION_SCALE;
+        }
+
+        public double getY() {
+            return (double) y / POSITION_SCALE;
+        }
+
+        public double getZ() {
+            return (double) z / POSITION_SCALE;
+        }
+
+        public float getYaw() {
+            return yaw / ANGLE_SCALE;
+        }
+
+        public float getPitch() {
+            return pitch / ANGLE_SCALE;
+        }
+
+        private void readHeader() {
+            if (offset >= frames.length) {
+                wait = -1;
+                return;
+            }
+
+            long header = readVarint();
+            flags = (int) (header & ((1 << COMPONENTS) - 1));
+            wait = (int) Math.min(header >>> COMPONENTS, Integer.MAX_VALUE);
+        }
+
+        private int readDelta() {
+            long value = readVarint();
+            return (int) ((value >>> 1) ^ -(value & 1));
+        }
+
+        private long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64 && offset < frames.length; shift += 7) {
+                byte b = frames[offset++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.stufy.fragmc.icedspear.models;
+
+import java.util.Arrays;
+
+/**
+ * Encodes a run into a {@link Ghost} as it happens. Only the last position of each tick is
+ * kept, and ticks where nothing changed are not written at all but counted into the next
+ * frame's header. The buffer is handed in by the caller so it can be reused across runs.
+ */
+public class GhostRecorder {
+    private final double originX, originY, originZ;
+    private final int startTick;
+    private byte[] buffer;
+    private int length;
+
+    // Last written frame
+    private int lastTick;
+    private final int[] last = new int[Ghost.COMPONENTS];
+
+    // Newest sample, written once a later tick arrives
+    private boolean hasPending;
+    private int pendingTick;
+    private final int[] pending = new int[Ghost.COMPONENTS];
+
+    /**
+     * @param buffer Buffer to encode into; grown when full
+     * @param originX Position everything is recorded relative to
+     * @param startTick Server tick the run started on
+     */
+    public GhostRecorder(byte[] buffer, double originX, double originY, double originZ, int startTick) {
+        this.buffer = buffer;
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.startTick = startTick;
+        this.lastTick = startTick - 1;
+    }
+
+    /**
+     * Record where the player is
+     * @param tick Current server tick
+     */
+    public void sample(int tick, double x, double y, double z, float yaw, float pitch) {
+        if (hasPending && tick != pendingTick) {
+            commit();
+        }
+
+        pending[0] = (int) Math.round((x - originX) * Ghost.POSITION_SCALE);
+        pending[1] = (int) Math.round((y - originY) * Ghost.POSITION_SCALE);
+        pending[2] = (int) Math.round((z - originZ) * Ghost.POSITION_SCALE);
+        pending[3] = Math.round(yaw * Ghost.ANGLE_SCALE);
+        pending[4] = Math.round(pitch * Ghost.ANGLE_SCALE);
+        pendingTick = tick;
+        hasPending = true;
+    }
+
+    private void commit() {
+        hasPending = false;
+
+        int flags = 0;
+        for (int i = 0; i < Ghost.COMPONENTS; i++) {
+            if (pending[i] != last[i]) {
+                flags |= 1 << i;
+            }
+        }
+        if (flags == 0) {
+            // Standing still, the tick becomes part of the next frame's idle run
+            return;
+        }
+
+        writeVarint(((long) (pendingTick - lastTick - 1) << Ghost.COMPONENTS) | flags);
+        for (int i = 0; i < Ghost.COMPONENTS; i++) {
+            int delta = pending[i] - last[i];
+            if (delta != 0) {
+                writeVarint(((delta << 1) ^ (delta >> 31)) & 0xFFFFFFFFL);
+                last[i] = pending[i];
+            }
+        }
+        lastTick = pendingTick;
+    }
+
+    private void writeVarint(long value) {
+        if (length + 10 > buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    /**
+     * Get the number of ticks since the run started
+     */
+    public int getTicks(int tick) {
+        return tick - startTick + 1;
+    }
+
+    /**
+     * Write the last sample and copy the frames out
+     * @param time The run's time in milliseconds
+     * @param endTick Server tick the run finished on
+     */
+    public Ghost finish(long time, int endTick) {
+        if (hasPending) {
+            commit();
+        }
+        return new Ghost(time, getTicks(endTick), Arrays.copyOf(buffer, length));
+    }
+
+    /**
+     * Get the buffer, which may have grown since it was handed in, to give it back to a pool
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+}
@@ -0,0 +1,27 @@
+package com.stufy.fragmc.icedspear.models;
+
+import java.util.UUID;
+
+public class GlobalRankEntry {
+    private final UUID playerId;
+    private final String playerName;
+    private final long points; // Sum of the points for every map rank
+
+    public GlobalRankEntry(UUID playerId, String playerName, long points) {
+        this.playerId = playerId;
+        this.playerName = playerName;
+        this.points = points;
+    }
+
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public long getPoints() {
+        return points;
+    }
+}
@@ -0,0 +1,93 @@
+package com.stufy.fragmc.icedspear.models;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Players ordered by the points they hold across every map, most first. Points are moved
+ * in by the caller as map ranks change, so nothing is ever recomputed from the map
+ * leaderboards; rank and top N lookups are O(log n).
+ */
+public class GlobalRanking {
+    // Equal points rank by UUID so the order is stable
+    private static final Comparator<GlobalRankEntry> ORDER = Comparator.comparingLong(GlobalRankEntry::getPoints).reversed()
+            .thenComparing(GlobalRankEntry::getPlayerId);
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final Map<UUID, GlobalRankEntry> byPlayer;
+    private final RankedTree<GlobalRankEntry> ranked;
+    private long version;
+
+    public GlobalRanking() {
+        this.byPlayer = new HashMap<>();
+        this.ranked = new RankedTree<>(ORDER);
+    }
+
+    /**
+     * Change a player's points. Players left with no points drop out of the ranking.
+     * @param playerId Player UUID
+     * @param playerName Player name, or null to keep the current one
+     * @param delta Points to add, negative to take away
+     */
+    public void addPoints(UUID playerId, String playerName, long delta) {
+        GlobalRankEntry existing = byPlayer.get(playerId);
+        if (delta == 0 && (existing == null || playerName == null || playerName.equals(existing.getPlayerName()))) {
+            return;
+        }
+
+        long points = delta;
+        if (existing != null) {
+            ranked.remove(existing);
+            points += existing.getPoints();
+            if (playerName == null) {
+                playerName = existing.getPlayerName();
+            }
+        }
+
+        if (points > 0) {
+            GlobalRankEntry entry = new GlobalRankEntry(playerId, playerName, points);
+            ranked.insert(entry);
+            byPlayer.put(playerId, entry);
+        } else {
+            byPlayer.remove(playerId);
+        }
+        version = VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Get a player's entry
+     * @return The entry, or null if the player has no points
+     */
+    public GlobalRankEntry get(UUID playerId) {
+        return byPlayer.get(playerId);
+    }
+
+    /**
+     * Get a player's rank
+     * @return Rank (1-based), or -1 if the player has no points
+     */
+    public int getRank(UUID playerId) {
+        GlobalRankEntry entry = byPlayer.get(playerId);
+        return entry != null ? ranked.getRank(entry) : -1;
+    }
+
+    /**
+     * Get the players with the most points, best first
+     * @param limit Maximum number of entries
+     */
+    public List<GlobalRankEntry> getTop(int limit) {
+        return ranked.getTop(limit);
+    }
+
+    public int size() {
+        return ranked.size();
+    }
+
+    /**
+     * Get the change counter, which goes up every time anyone's points change
+     */
+    public long getVersion() {
+        return version;
+    }
+}
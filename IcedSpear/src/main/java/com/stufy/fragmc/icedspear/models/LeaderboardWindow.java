@@ -0,0 +1,46 @@
+package com.stufy.fragmc.icedspear.models;
+
+/**
+ * Rolling time windows for leaderboards. Each window is a ring of buckets; the oldest bucket
+ * is dropped when a new one starts, so a window covers the last bucket count times bucket length.
+ */
+public enum LeaderboardWindow {
+    DAILY("Daily", 60 * 60 * 1000L, 24),
+    WEEKLY("Weekly", 24 * 60 * 60 * 1000L, 7),
+    MONTHLY("Monthly", 24 * 60 * 60 * 1000L, 30);
+
+    private final String displayName;
+    private final long bucketMillis;
+    private final int bucketCount;
+
+    LeaderboardWindow(String displayName, long bucketMillis, int bucketCount) {
+        this.displayName = displayName;
+        this.bucketMillis = bucketMillis;
+        this.bucketCount = bucketCount;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * Find a window by name, ignoring case
+     * @return The window, or null if there is none with that name
+     */
+    public static LeaderboardWindow fromName(String name) {
+        for (LeaderboardWindow window : values()) {
+            if (window.name().equalsIgnoreCase(name)) {
+                return window;
+            }
+        }
+        return null;
+    }
+}
@@ -10,7 +10,9 @@ public class MapInstance {
     private final boolean isPublic;
     private World world;
     private Location spawnLocation;
+    private Plot plot; // Set when the instance lives on a plot in a shared world
     private MapState state;
+    private volatile int pasteProgress; // 0-100 while the schematic is being pasted
     private final Set<UUID> players;
     private final Set<UUID> waitingPlayers;
     private final long createdAt;
@@ -53,6 +55,14 @@ public class MapInstance {
         this.spawnLocation = spawnLocation;
     }
 
+    public Plot getPlot() {
+        return plot;
+    }
+
+    public void setPlot(Plot plot) {
+        this.plot = plot;
+    }
+
     public MapState getState() {
         return state;
     }
@@ -61,6 +71,14 @@ public class MapInstance {
         this.state = state;
     }
 
+    public int getPasteProgress() {
+        return pasteProgress;
+    }
+
+    public void setPasteProgress(int pasteProgress) {
+        this.pasteProgress = pasteProgress;
+    }
+
     public Set<UUID> getPlayers() {
         return new HashSet<>(players);
     }
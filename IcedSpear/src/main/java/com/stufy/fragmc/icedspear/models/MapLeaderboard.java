@@ -0,0 +1,111 @@
+package com.stufy.fragmc.icedspear.models;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Best times of every player on one map, fastest first. Entries are kept in a
+ * {@link RankedTree}, so inserting a time, finding a player's rank and reading the top N
+ * are O(log n) however many players there are. A UUID index finds a player's entry directly.
+ */
+public class MapLeaderboard {
+    // Equal times rank by who got there first
+    private static final Comparator<LeaderboardEntry> ORDER = Comparator.comparingLong(LeaderboardEntry::getTime)
+            .thenComparingLong(LeaderboardEntry::getTimestamp)
+            .thenComparing(LeaderboardEntry::getPlayerId);
+
+    // Versions are unique across all leaderboards, so a recreated leaderboard never repeats one
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final Map<UUID, LeaderboardEntry> byPlayer;
+    private final RankedTree<LeaderboardEntry> ranked;
+    private long version;
+
+    public MapLeaderboard() {
+        this.byPlayer = new HashMap<>();
+        this.ranked = new RankedTree<>(ORDER);
+    }
+
+    /**
+     * Record a time if it beats the player's current one
+     * @return true if the leaderboard changed
+     */
+    public boolean submit(LeaderboardEntry entry) {
+        LeaderboardEntry existing = byPlayer.get(entry.getPlayerId());
+        if (existing != null && entry.getTime() >= existing.getTime()) {
+            return false;
+        }
+
+        if (existing != null) {
+            ranked.remove(existing);
+        }
+        ranked.insert(entry);
+        byPlayer.put(entry.getPlayerId(), entry);
+        version = VERSIONS.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Remove a player's time
+     * @return The removed entry, or null if the player had no time
+     */
+    public LeaderboardEntry remove(UUID playerId) {
+        LeaderboardEntry existing = byPlayer.remove(playerId);
+        if (existing != null) {
+            ranked.remove(existing);
+            version = VERSIONS.incrementAndGet();
+        }
+        return existing;
+    }
+
+    /**
+     * Get the slowest entry
+     * @return The entry, or null if the leaderboard is empty
+     */
+    public LeaderboardEntry getWorst() {
+        return ranked.getLast();
+    }
+
+    /**
+     * Get a player's entry
+     * @return The entry, or null if the player has no time
+     */
+    public LeaderboardEntry get(UUID playerId) {
+        return byPlayer.get(playerId);
+    }
+
+    /**
+     * Get a player's rank
+     * @return Rank (1-based), or -1 if the player has no time
+     */
+    public int getRank(UUID playerId) {
+        LeaderboardEntry entry = byPlayer.get(playerId);
+        return entry != null ? ranked.getRank(entry) : -1;
+    }
+
+    /**
+     * Get the fastest entries, best first
+     * @param limit Maximum number of entries
+     */
+    public List<LeaderboardEntry> getTop(int limit) {
+        return ranked.getTop(limit);
+    }
+
+    /**
+     * Get every entry, best first
+     */
+    public List<LeaderboardEntry> getEntries() {
+        return getTop(size());
+    }
+
+    public int size() {
+        return ranked.size();
+    }
+
+    /**
+     * Get the change counter, which goes up every time an entry is added, improved or removed
+     */
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,51 @@
+package com.stufy.fragmc.icedspear.models;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.util.BoundingBox;
+
+public class Plot {
+    private final World world;
+    private final int index;
+    private final int originX;
+    private final int originZ;
+    private BoundingBox pastedBounds; // Area to clear when the plot is freed
+
+    public Plot(World world, int index, int originX, int originZ) {
+        this.world = world;
+        this.index = index;
+        this.originX = originX;
+        this.originZ = originZ;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginZ() {
+        return originZ;
+    }
+
+    /**
+     * Get the location schematics are pasted at on this plot
+     */
+    public Location getPasteLocation() {
+        return new Location(world, originX, 100, originZ);
+    }
+
+    public BoundingBox getPastedBounds() {
+        return pastedBounds;
+    }
+
+    public void setPastedBounds(BoundingBox pastedBounds) {
+        this.pastedBounds = pastedBounds;
+    }
+}
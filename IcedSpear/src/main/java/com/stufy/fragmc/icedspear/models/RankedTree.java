@@ -0,0 +1,188 @@
+package com.stufy.fragmc.icedspear.models;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sorted collection that knows the position of every element. Elements are kept in a treap
+ * that tracks subtree sizes, so inserting, removing, finding a rank and reading the first N
+ * are O(log n). The order must be total: no two distinct elements may compare equal.
+ */
+public class RankedTree<E> {
+    private final Comparator<? super E> order;
+    private Node<E> root;
+
+    public RankedTree(Comparator<? super E> order) {
+        this.order = order;
+    }
+
+    public void insert(E element) {
+        root = insert(root, new Node<>(element, ThreadLocalRandom.current().nextInt()));
+    }
+
+    public void remove(E element) {
+        root = remove(root, element);
+    }
+
+    /**
+     * Get the position of an element
+     * @return Rank (1-based), or -1 if the element is not in the tree
+     */
+    public int getRank(E element) {
+        int rank = 1;
+        Node<E> node = root;
+        while (node != null) {
+            int compare = order.compare(element, node.element);
+            if (compare < 0) {
+                node = node.left;
+            } else if (compare > 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return rank + size(node.left);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the first elements in order
+     * @param limit Maximum number of elements
+     */
+    public List<E> getTop(int limit) {
+        List<E> top = new ArrayList<>(Math.min(limit, size()));
+        Deque<Node<E>> stack = new ArrayDeque<>();
+        Node<E> node = root;
+
+        // In-order walk that stops after the limit
+        while ((node != null || !stack.isEmpty()) && top.size() < limit) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+            node = stack.pop();
+            top.add(node.element);
+            node = node.right;
+        }
+
+        return top;
+    }
+
+    /**
+     * Get the last element
+     * @return The element, or null if the tree is empty
+     */
+    public E getLast() {
+        Node<E> node = root;
+        while (node != null && node.right != null) {
+            node = node.right;
+        }
+        return node != null ? node.element : null;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    private Node<E> insert(Node<E> node, Node<E> added) {
+        if (node == null) {
+            return added;
+        }
+
+        if (order.compare(added.element, node.element) < 0) {
+            node.left = insert(node.left, added);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, added);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+
+        node.update();
+        return node;
+    }
+
+    private Node<E> remove(Node<E> node, E element) {
+        if (node == null) {
+            return null;
+        }
+
+        int compare = order.compare(element, node.element);
+        if (compare == 0) {
+            return merge(node.left, node.right);
+        }
+
+        if (compare < 0) {
+            node.left = remove(node.left, element);
+        } else {
+            node.right = remove(node.right, element);
+        }
+
+        node.update();
+        return node;
+    }
+
+    // Every element in left comes before every element in right
+    private static <E> Node<E> merge(Node<E> left, Node<E> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private static <E> Node<E> rotateRight(Node<E> node) {
+        Node<E> left = node.left;
+        node.left = left.right;
+        node.update();
+        left.right = node;
+        left.update();
+        return left;
+    }
+
+    private static <E> Node<E> rotateLeft(Node<E> node) {
+        Node<E> right = node.right;
+        node.right = right.left;
+        node.update();
+        right.left = node;
+        right.update();
+        return right;
+    }
+
+    private static int size(Node<?> node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static class Node<E> {
+        private final E element;
+        private final int priority;
+        private Node<E> left;
+        private Node<E> right;
+        private int size;
+
+        private Node(E element, int priority) {
+            this.element = element;
+            this.priority = priority;
+            this.size = 1;
+        }
+
+        private void update() {
+            size = 1 + RankedTree.size(left) + RankedTree.size(right);
+        }
+    }
+}
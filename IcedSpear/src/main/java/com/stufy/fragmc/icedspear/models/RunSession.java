@@ -0,0 +1,129 @@
+package com.stufy.fragmc.icedspear.models;
+
+import net.md_5.bungee.api.chat.TextComponent;
+
+import java.util.UUID;
+
+/**
+ * One player's time in a map instance, from joining until leaving. Holds everything the
+ * timer and ghost recording need, so handling a move takes a single lookup.
+ */
+public class RunSession {
+    private final UUID playerId;
+    private final MapInstance instance;
+    private RunState state;
+    private long startTime; // When the timer started, in milliseconds
+    private long finishTime; // Time taken, once finished
+    private GhostRecorder recorder; // Set while the run is being recorded
+
+    // Action bar components, kept so updates can reuse them and skip unchanged sends
+    private TextComponent timerActionbar;
+    private TextComponent finishedActionbar;
+    private TextComponent lastActionbar;
+    private int lastActionbarTick;
+
+    public RunSession(UUID playerId, MapInstance instance) {
+        this.playerId = playerId;
+        this.instance = instance;
+        this.state = RunState.WAITING;
+    }
+
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    public MapInstance getInstance() {
+        return instance;
+    }
+
+    public String getMapName() {
+        return instance.getMapName();
+    }
+
+    public RunState getState() {
+        return state;
+    }
+
+    /**
+     * Start the timer
+     * @param now Current time in milliseconds
+     */
+    public void start(long now) {
+        state = RunState.RUNNING;
+        startTime = now;
+    }
+
+    /**
+     * Stop the timer
+     * @param now Current time in milliseconds
+     * @return Time taken in milliseconds
+     */
+    public long finish(long now) {
+        state = RunState.FINISHED;
+        finishTime = now - startTime;
+        return finishTime;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getFinishTime() {
+        return finishTime;
+    }
+
+    /**
+     * Get the time on the clock: running time, the final time once finished, or 0 before the start
+     * @param now Current time in milliseconds
+     */
+    public long getElapsed(long now) {
+        switch (state) {
+            case RUNNING:
+                return now - startTime;
+            case FINISHED:
+                return finishTime;
+            default:
+                return 0;
+        }
+    }
+
+    public GhostRecorder getRecorder() {
+        return recorder;
+    }
+
+    public void setRecorder(GhostRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public TextComponent getTimerActionbar() {
+        return timerActionbar;
+    }
+
+    public void setTimerActionbar(TextComponent timerActionbar) {
+        this.timerActionbar = timerActionbar;
+    }
+
+    public TextComponent getFinishedActionbar() {
+        return finishedActionbar;
+    }
+
+    public void setFinishedActionbar(TextComponent finishedActionbar) {
+        this.finishedActionbar = finishedActionbar;
+    }
+
+    /**
+     * Get the action bar component sent last
+     */
+    public TextComponent getLastActionbar() {
+        return lastActionbar;
+    }
+
+    public int getLastActionbarTick() {
+        return lastActionbarTick;
+    }
+
+    public void setLastActionbar(TextComponent lastActionbar, int tick) {
+        this.lastActionbar = lastActionbar;
+        this.lastActionbarTick = tick;
+    }
+}
@@ -0,0 +1,7 @@
+package com.stufy.fragmc.icedspear.models;
+
+public enum RunState {
+    WAITING, // In the map, timer starts on the first move
+    RUNNING,
+    FINISHED
+}
@@ -0,0 +1,87 @@
+package com.stufy.fragmc.icedspear.models;
+
+import org.bukkit.Location;
+import org.bukkit.util.BoundingBox;
+import org.bukkit.util.Vector;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Positions found by scanning a schematic once, relative to the paste location
+ * (the clipboard origin), so every instance can reuse them without touching its world.
+ */
+public class SchematicMetadata {
+    private final String schematicName;
+    private final long sourceModified;
+    private final long sourceSize;
+    private final Vector minOffset;
+    private final Vector maxOffset;
+    private final Vector spawnBlockOffset; // Gold block, null if the schematic has none
+    private final List<Vector> finishBlockOffsets; // Diamond blocks
+
+    public SchematicMetadata(String schematicName, long sourceModified, long sourceSize, Vector minOffset, Vector maxOffset,
+                             Vector spawnBlockOffset, List<Vector> finishBlockOffsets) {
+        this.schematicName = schematicName;
+        this.sourceModified = sourceModified;
+        this.sourceSize = sourceSize;
+        this.minOffset = minOffset;
+        this.maxOffset = maxOffset;
+        this.spawnBlockOffset = spawnBlockOffset;
+        this.finishBlockOffsets = Collections.unmodifiableList(finishBlockOffsets);
+    }
+
+    public String getSchematicName() {
+        return schematicName;
+    }
+
+    /**
+     * Check if this metadata was built from the given version of the schematic file
+     */
+    public boolean matchesSource(long modified, long size) {
+        return sourceModified == modified && sourceSize == size;
+    }
+
+    public Vector getSpawnBlockOffset() {
+        return spawnBlockOffset;
+    }
+
+    public List<Vector> getFinishBlockOffsets() {
+        return finishBlockOffsets;
+    }
+
+    /**
+     * Get where players spawn when the schematic is pasted at a location:
+     * on top of the gold block, or just above the paste location if there is none
+     */
+    public Location getSpawnLocation(Location pasteLocation) {
+        if (spawnBlockOffset == null) {
+            return pasteLocation.clone().add(0, 1, 0);
+        }
+
+        return pasteLocation.clone().add(spawnBlockOffset.getX() + 0.5, spawnBlockOffset.getY() + 1, spawnBlockOffset.getZ() + 0.5);
+    }
+
+    /**
+     * Get the number of blocks the schematic spans along X
+     */
+    public int getWidth() {
+        return (int) (maxOffset.getX() - minOffset.getX()) + 1;
+    }
+
+    /**
+     * Get the number of blocks the schematic spans along Z
+     */
+    public int getLength() {
+        return (int) (maxOffset.getZ() - minOffset.getZ()) + 1;
+    }
+
+    /**
+     * Get the area the schematic covers when pasted at a location
+     */
+    public BoundingBox getBounds(Location pasteLocation) {
+        return new BoundingBox(
+                pasteLocation.getBlockX() + minOffset.getX(), pasteLocation.getBlockY() + minOffset.getY(), pasteLocation.getBlockZ() + minOffset.getZ(),
+                pasteLocation.getBlockX() + maxOffset.getX(), pasteLocation.getBlockY() + maxOffset.getY(), pasteLocation.getBlockZ() + maxOffset.getZ());
+    }
+}
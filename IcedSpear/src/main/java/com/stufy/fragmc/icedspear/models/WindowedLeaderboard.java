@@ -0,0 +1,203 @@
+package com.stufy.fragmc.icedspear.models;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Best times of one map within a rolling window. Times go into the bucket of the current
+ * period; a combined leaderboard holds every player's best over all buckets and is patched
+ * only for the players of a bucket when it expires. Each bucket keeps at most a fixed number
+ * of entries, which bounds memory and still gives exact results for that many top places.
+ */
+public class WindowedLeaderboard {
+    private final LeaderboardWindow window;
+    private final int maxEntries;
+    private final MapLeaderboard[] buckets;
+    private final MapLeaderboard combined;
+
+    // Period number (time / bucket length) of the newest bucket
+    private long newestPeriod;
+
+    // Entries of each bucket as of the last snapshot, and the bucket version they were copied at
+    private final List<List<LeaderboardEntry>> copies;
+    private final long[] copiedVersions;
+
+    public WindowedLeaderboard(LeaderboardWindow window, int maxEntries, long now) {
+        this.window = window;
+        this.maxEntries = maxEntries;
+        this.buckets = new MapLeaderboard[window.getBucketCount()];
+        this.combined = new MapLeaderboard();
+        this.newestPeriod = now / window.getBucketMillis();
+
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new MapLeaderboard();
+        }
+
+        this.copies = new ArrayList<>(Collections.nCopies(buckets.length, Collections.emptyList()));
+        this.copiedVersions = new long[buckets.length];
+        Arrays.fill(copiedVersions, -1);
+    }
+
+    /**
+     * Record a time in the current bucket
+     * @param entry The time, with its timestamp in the current period
+     */
+    public void submit(LeaderboardEntry entry) {
+        advance(entry.getTimestamp());
+
+        MapLeaderboard bucket = buckets[slot(newestPeriod)];
+        if (!bucket.submit(entry)) {
+            return;
+        }
+
+        if (bucket.size() > maxEntries) {
+            LeaderboardEntry worst = bucket.getWorst();
+            bucket.remove(worst.getPlayerId());
+            if (worst != entry) {
+                refresh(worst.getPlayerId(), worst);
+            }
+        }
+
+        if (bucket.get(entry.getPlayerId()) == entry) {
+            combined.submit(entry);
+        }
+    }
+
+    /**
+     * Drop the buckets that have fallen out of the window
+     * @param now The current time
+     */
+    public void advance(long now) {
+        long period = now / window.getBucketMillis();
+        if (period <= newestPeriod) {
+            return;
+        }
+
+        // After a long gap every bucket is stale; clearing each once is enough
+        long steps = Math.min(period - newestPeriod, buckets.length);
+        newestPeriod = period - steps;
+        for (long i = 0; i < steps; i++) {
+            newestPeriod++;
+            MapLeaderboard expired = buckets[slot(newestPeriod)];
+            buckets[slot(newestPeriod)] = new MapLeaderboard();
+
+            for (LeaderboardEntry entry : expired.getEntries()) {
+                refresh(entry.getPlayerId(), entry);
+            }
+        }
+    }
+
+    // A bucket entry is gone; if it was the player's best, fall back to their best in the other buckets
+    private void refresh(UUID playerId, LeaderboardEntry removed) {
+        if (combined.get(playerId) != removed) {
+            return;
+        }
+
+        combined.remove(playerId);
+        LeaderboardEntry best = null;
+        for (MapLeaderboard bucket : buckets) {
+            LeaderboardEntry entry = bucket.get(playerId);
+            if (entry != null && (best == null || entry.getTime() < best.getTime())) {
+                best = entry;
+            }
+        }
+
+        if (best != null) {
+            combined.submit(best);
+        }
+    }
+
+    private int slot(long period) {
+        return (int) Math.floorMod(period, (long) buckets.length);
+    }
+
+    /**
+     * Get the best time of every player within the window
+     */
+    public MapLeaderboard getCombined() {
+        return combined;
+    }
+
+    public boolean isEmpty() {
+        return combined.size() == 0;
+    }
+
+    /**
+     * Copy the buckets so they can be written on another thread. Only buckets that changed
+     * since the last snapshot are copied, which after a finish is just the newest one.
+     */
+    public Snapshot snapshot() {
+        List<List<LeaderboardEntry>> ordered = new ArrayList<>(buckets.length);
+        for (int age = buckets.length - 1; age >= 0; age--) {
+            int slot = slot(newestPeriod - age);
+            MapLeaderboard bucket = buckets[slot];
+            if (copiedVersions[slot] != bucket.getVersion()) {
+                copies.set(slot, bucket.getEntries());
+                copiedVersions[slot] = bucket.getVersion();
+            }
+            ordered.add(copies.get(slot));
+        }
+        return new Snapshot(newestPeriod, ordered);
+    }
+
+    /**
+     * Read buckets written by {@link Snapshot#write(DataOutput)}, then drop the ones that expired meanwhile
+     */
+    public static WindowedLeaderboard read(DataInput in, LeaderboardWindow window, int maxEntries, long now) throws IOException {
+        long newestPeriod = in.readLong();
+        WindowedLeaderboard leaderboard = new WindowedLeaderboard(window, maxEntries, newestPeriod * window.getBucketMillis());
+
+        for (int age = window.getBucketCount() - 1; age >= 0; age--) {
+            MapLeaderboard bucket = leaderboard.buckets[leaderboard.slot(newestPeriod - age)];
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                UUID playerId = new UUID(in.readLong(), in.readLong());
+                String playerName = in.readUTF();
+                long time = in.readInt();
+                long timestamp = in.readLong();
+
+                LeaderboardEntry entry = new LeaderboardEntry(playerId, playerName, time, timestamp);
+                if (bucket.size() < maxEntries && bucket.submit(entry)) {
+                    leaderboard.combined.submit(entry);
+                }
+            }
+        }
+
+        leaderboard.advance(now);
+        return leaderboard;
+    }
+
+    /**
+     * The buckets of a windowed leaderboard at one moment, oldest first. Never changes, so it
+     * can be written on any thread.
+     */
+    public static class Snapshot {
+        private final long newestPeriod;
+        private final List<List<LeaderboardEntry>> buckets;
+
+        private Snapshot(long newestPeriod, List<List<LeaderboardEntry>> buckets) {
+            this.newestPeriod = newestPeriod;
+            this.buckets = buckets;
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeLong(newestPeriod);
+            for (List<LeaderboardEntry> bucket : buckets) {
+                out.writeInt(bucket.size());
+                for (LeaderboardEntry entry : bucket) {
+                    out.writeLong(entry.getPlayerId().getMostSignificantBits());
+                    out.writeLong(entry.getPlayerId().getLeastSignificantBits());
+                    out.writeUTF(entry.getPlayerName());
+                    out.writeInt((int) Math.min(entry.getTime(), Integer.MAX_VALUE));
+                    out.writeLong(entry.getTimestamp());
+                }
+            }
+        }
+    }
+}
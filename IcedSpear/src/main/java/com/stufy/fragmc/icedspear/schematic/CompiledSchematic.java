@@ -0,0 +1,178 @@
+package com.stufy.fragmc.icedspear.schematic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A schematic precompiled into a flat, palette-indexed file, read through a memory mapping.
+ * Block indices are stored in y, z, x order with a fixed width, so any block can be read
+ * directly from the mapping without building an NBT tree or clipboard first.
+ *
+ * Layout (big-endian): magic, version, source modified time and size, width, height, length,
+ * offset of the minimum corner from the origin, palette (block data strings), index width
+ * in bytes, then one index per block.
+ */
+public class CompiledSchematic {
+    public static final String EXTENSION = ".ispc";
+    static final int MAGIC = 0x49535043; // "ISPC"
+    static final int VERSION = 1;
+
+    private final long sourceModified;
+    private final long sourceSize;
+    private final int width;
+    private final int height;
+    private final int length;
+    private final int minOffsetX;
+    private final int minOffsetY;
+    private final int minOffsetZ;
+    private final List<String> palette;
+    private final int indexBytes;
+    private final ByteBuffer data;
+
+    private CompiledSchematic(long sourceModified, long sourceSize, int width, int height, int length,
+                              int minOffsetX, int minOffsetY, int minOffsetZ, List<String> palette,
+                              int indexBytes, ByteBuffer data) {
+        this.sourceModified = sourceModified;
+        this.sourceSize = sourceSize;
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        this.minOffsetX = minOffsetX;
+        this.minOffsetY = minOffsetY;
+        this.minOffsetZ = minOffsetZ;
+        this.palette = Collections.unmodifiableList(palette);
+        this.indexBytes = indexBytes;
+        this.data = data;
+    }
+
+    /**
+     * Map a compiled schematic file into memory
+     * @param file The compiled file
+     * @return The compiled schematic
+     * @throws IOException If the file cannot be read or is not a compiled schematic
+     */
+    public static CompiledSchematic open(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a compiled schematic: " + file.getName());
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported compiled schematic version " + version + ": " + file.getName());
+            }
+
+            long sourceModified = buffer.getLong();
+            long sourceSize = buffer.getLong();
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int length = buffer.getInt();
+            int minOffsetX = buffer.getInt();
+            int minOffsetY = buffer.getInt();
+            int minOffsetZ = buffer.getInt();
+
+            int paletteSize = buffer.getInt();
+            List<String> palette = new ArrayList<>(paletteSize);
+            for (int i = 0; i < paletteSize; i++) {
+                byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(bytes);
+                palette.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+
+            int indexBytes = buffer.get();
+            long expected = (long) width * height * length * indexBytes;
+            if (buffer.remaining() < expected) {
+                throw new IOException("Truncated compiled schematic: " + file.getName());
+            }
+
+            ByteBuffer data = buffer.slice();
+            return new CompiledSchematic(sourceModified, sourceSize, width, height, length,
+                    minOffsetX, minOffsetY, minOffsetZ, palette, indexBytes, data);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt compiled schematic: " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Check if this was compiled from the given version of the source schematic
+     */
+    public boolean matchesSource(long modified, long size) {
+        return sourceModified == modified && sourceSize == size;
+    }
+
+    /**
+     * Get the palette index of a block
+     * @param x X from the minimum corner
+     * @param y Y from the minimum corner
+     * @param z Z from the minimum corner
+     * @return The index into {@link #getPalette()}
+     */
+    public int getBlockIndex(int x, int y, int z) {
+        int position = ((y * length + z) * width + x) * indexBytes;
+        switch (indexBytes) {
+            case 1:
+                return data.get(position) & 0xFF;
+            case 2:
+                return data.getShort(position) & 0xFFFF;
+            default:
+                return data.getInt(position);
+        }
+    }
+
+    /**
+     * Find the palette index of a block type, ignoring block states
+     * @param blockType The namespaced type, e.g. minecraft:gold_block
+     * @return The first matching index, or -1 if the schematic does not contain it
+     */
+    public int findPaletteIndex(String blockType) {
+        for (int i = 0; i < palette.size(); i++) {
+            String entry = palette.get(i);
+            int states = entry.indexOf('[');
+            if ((states < 0 ? entry : entry.substring(0, states)).equals(blockType)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public List<String> getPalette() {
+        return palette;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getMinOffsetX() {
+        return minOffsetX;
+    }
+
+    public int getMinOffsetY() {
+        return minOffsetY;
+    }
+
+    public int getMinOffsetZ() {
+        return minOffsetZ;
+    }
+}
@@ -0,0 +1,98 @@
+package com.stufy.fragmc.icedspear.schematic;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal reader for uncompressed NBT, enough to read Sponge schematics without WorldEdit.
+ * Compounds become maps, lists become lists and arrays stay primitive arrays.
+ */
+class NbtReader {
+    private static final int TAG_END = 0;
+    private static final int TAG_COMPOUND = 10;
+
+    private final DataInputStream in;
+
+    NbtReader(DataInputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Read the named root compound
+     */
+    Map<String, Object> readRoot() throws IOException {
+        int type = in.readUnsignedByte();
+        if (type != TAG_COMPOUND) {
+            throw new IOException("Root tag is not a compound");
+        }
+        in.readUTF();
+        return readCompound();
+    }
+
+    private Map<String, Object> readCompound() throws IOException {
+        Map<String, Object> compound = new HashMap<>();
+        while (true) {
+            int type = in.readUnsignedByte();
+            if (type == TAG_END) {
+                return compound;
+            }
+            String name = in.readUTF();
+            compound.put(name, readPayload(type));
+        }
+    }
+
+    private Object readPayload(int type) throws IOException {
+        switch (type) {
+            case 1:
+                return in.readByte();
+            case 2:
+                return in.readShort();
+            case 3:
+                return in.readInt();
+            case 4:
+                return in.readLong();
+            case 5:
+                return in.readFloat();
+            case 6:
+                return in.readDouble();
+            case 7: {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return bytes;
+            }
+            case 8:
+                return in.readUTF();
+            case 9: {
+                int elementType = in.readUnsignedByte();
+                int length = in.readInt();
+                List<Object> list = new ArrayList<>(Math.max(0, length));
+                for (int i = 0; i < length; i++) {
+                    list.add(readPayload(elementType));
+                }
+                return list;
+            }
+            case TAG_COMPOUND:
+                return readCompound();
+            case 11: {
+                int[] ints = new int[in.readInt()];
+                for (int i = 0; i < ints.length; i++) {
+                    ints[i] = in.readInt();
+                }
+                return ints;
+            }
+            case 12: {
+                long[] longs = new long[in.readInt()];
+                for (int i = 0; i < longs.length; i++) {
+                    longs[i] = in.readLong();
+                }
+                return longs;
+            }
+            default:
+                throw new IOException("Unknown NBT tag type: " + type);
+        }
+    }
+}
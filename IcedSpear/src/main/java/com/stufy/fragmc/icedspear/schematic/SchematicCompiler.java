@@ -0,0 +1,201 @@
+package com.stufy.fragmc.icedspear.schematic;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compiles Sponge schematics (.schem, versions 1 to 3) into the {@link CompiledSchematic} format.
+ * This has no Bukkit or WorldEdit dependencies, so it also runs outside the server:
+ * <pre>java -cp IcedSpear.jar com.stufy.fragmc.icedspear.schematic.SchematicCompiler &lt;file or folder&gt;...</pre>
+ */
+public class SchematicCompiler {
+
+    /**
+     * Compile a schematic into an output file, replacing it atomically
+     * @param source The .schem file
+     * @param output The compiled file to write
+     * @throws IOException If the schematic cannot be read or cannot be compiled losslessly
+     */
+    public static void compile(File source, File output) throws IOException {
+        Map<String, Object> root;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(source))))) {
+            root = new NbtReader(in).readRoot();
+        }
+
+        // Version 3 wraps everything in a "Schematic" compound
+        Map<String, Object> schematic = root;
+        if (root.get("Schematic") instanceof Map) {
+            schematic = asCompound(root.get("Schematic"));
+        }
+
+        int version = schematic.get("Version") instanceof Integer ? (Integer) schematic.get("Version") : 1;
+        int width = ((Short) require(schematic, "Width")) & 0xFFFF;
+        int height = ((Short) require(schematic, "Height")) & 0xFFFF;
+        int length = ((Short) require(schematic, "Length")) & 0xFFFF;
+
+        Map<String, Object> blocks;
+        byte[] blockData;
+        int[] minOffset;
+        if (version >= 3) {
+            blocks = asCompound(require(schematic, "Blocks"));
+            blockData = (byte[]) require(blocks, "Data");
+            // Offset is the minimum corner relative to the origin
+            minOffset = schematic.get("Offset") instanceof int[] ? (int[]) schematic.get("Offset") : new int[3];
+        } else {
+            blocks = schematic;
+            blockData = (byte[]) require(schematic, "BlockData");
+            minOffset = readWorldEditOffset(schematic);
+        }
+
+        // Block entities and entities carry NBT this format does not keep; such maps keep using the .schem
+        if (!isEmpty(blocks.get("BlockEntities")) || !isEmpty(blocks.get("TileEntities")) || !isEmpty(schematic.get("Entities"))) {
+            throw new IOException("Schematic contains block entities or entities and cannot be compiled");
+        }
+
+        Map<String, Object> paletteTag = asCompound(require(blocks, "Palette"));
+        int paletteSize = 0;
+        for (Object id : paletteTag.values()) {
+            paletteSize = Math.max(paletteSize, (Integer) id + 1);
+        }
+        String[] palette = new String[paletteSize];
+        for (Map.Entry<String, Object> entry : paletteTag.entrySet()) {
+            palette[(Integer) entry.getValue()] = entry.getKey();
+        }
+        for (int i = 0; i < palette.length; i++) {
+            if (palette[i] == null) {
+                palette[i] = "minecraft:air";
+            }
+        }
+
+        int indexBytes = paletteSize <= 0x100 ? 1 : paletteSize <= 0x10000 ? 2 : 4;
+        int volume = width * height * length;
+
+        File temp = new File(output.getParentFile(), output.getName() + ".tmp");
+        output.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(CompiledSchematic.MAGIC);
+            out.writeInt(CompiledSchematic.VERSION);
+            out.writeLong(source.lastModified());
+            out.writeLong(source.length());
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(length);
+            out.writeInt(minOffset[0]);
+            out.writeInt(minOffset[1]);
+            out.writeInt(minOffset[2]);
+
+            out.writeInt(palette.length);
+            for (String state : palette) {
+                byte[] bytes = state.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+            out.writeByte(indexBytes);
+
+            // Sponge block data is a varint per block in the same y, z, x order
+            int position = 0;
+            for (int i = 0; i < volume; i++) {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    if (position >= blockData.length) {
+                        throw new IOException("Block data ends after " + i + " of " + volume + " blocks");
+                    }
+                    b = blockData[position++];
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+
+                if (value < 0 || value >= palette.length) {
+                    throw new IOException("Block " + i + " uses unknown palette id " + value);
+                }
+
+                switch (indexBytes) {
+                    case 1 -> out.writeByte(value);
+                    case 2 -> out.writeShort(value);
+                    default -> out.writeInt(value);
+                }
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+
+        Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int[] readWorldEditOffset(Map<String, Object> schematic) {
+        if (!(schematic.get("Metadata") instanceof Map)) {
+            return new int[3];
+        }
+
+        Map<String, Object> metadata = asCompound(schematic.get("Metadata"));
+        if (!(metadata.get("WEOffsetX") instanceof Integer)) {
+            return new int[3];
+        }
+
+        return new int[]{(Integer) metadata.get("WEOffsetX"), (Integer) metadata.get("WEOffsetY"), (Integer) metadata.get("WEOffsetZ")};
+    }
+
+    private static boolean isEmpty(Object tag) {
+        return !(tag instanceof List) || ((List<?>) tag).isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asCompound(Object tag) {
+        return (Map<String, Object>) tag;
+    }
+
+    private static Object require(Map<String, Object> compound, String key) throws IOException {
+        Object value = compound.get(key);
+        if (value == null) {
+            throw new IOException("Missing tag: " + key);
+        }
+        return value;
+    }
+
+    /**
+     * Get the compiled file for a schematic file: compiled/&lt;name&gt;.ispc next to it
+     */
+    public static File getOutputFile(File source) {
+        String name = source.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(new File(source.getParentFile(), "compiled"), (dot > 0 ? name.substring(0, dot) : name) + CompiledSchematic.EXTENSION);
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: SchematicCompiler <schematic file or folder>...");
+            System.exit(2);
+        }
+
+        int failed = 0;
+        for (String arg : args) {
+            File file = new File(arg);
+            File[] sources = file.isDirectory() ? file.listFiles((dir, name) -> name.endsWith(".schem")) : new File[]{file};
+            if (sources == null) {
+                continue;
+            }
+
+            for (File source : sources) {
+                File output = getOutputFile(source);
+                try {
+                    compile(source, output);
+                    System.out.println("Compiled " + source.getName() + " -> " + output.getPath() + " (" + output.length() + " bytes)");
+                } catch (IOException e) {
+                    System.err.println("Skipped " + source.getName() + ": " + e.getMessage());
+                    failed++;
+                }
+            }
+        }
+
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
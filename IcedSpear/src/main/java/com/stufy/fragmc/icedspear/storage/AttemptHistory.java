@@ -0,0 +1,323 @@
+package com.stufy.fragmc.icedspear.storage;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+import com.stufy.fragmc.icedspear.models.AttemptOutcome;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Every finished and abandoned run, kept per map in append-only segment files under history/.
+ * Attempts are buffered per map and appended as blocks of length, CRC32 and payload. Inside a
+ * block each column is stored on its own: timestamps and durations as zigzag varint deltas,
+ * players as indexes into a UUID dictionary and outcomes run-length encoded, which brings a
+ * typical attempt down to a few bytes. A map's segment is left alone once it grows past
+ * attempt-history.segment-bytes and the next one is started.
+ */
+public class AttemptHistory {
+    static final int MAGIC = 0x49534148; // "ISAH"
+    static final int FORMAT = 1;
+    static final int MAX_BLOCK_BYTES = 1 << 24;
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private final IcedSpear plugin;
+    private final File folder;
+
+    // Map name -> attempts not written yet; main thread only
+    private final Map<String, PendingBlock> pending;
+
+    // Map name -> segment being appended to; writer thread only
+    private final Map<String, File> currentSegments;
+    private BukkitTask task;
+
+    public AttemptHistory(IcedSpear plugin, File folder) {
+        this.plugin = plugin;
+        this.folder = folder;
+        this.pending = new HashMap<>();
+        this.currentSegments = new HashMap<>();
+    }
+
+    /**
+     * Start writing buffered attempts on a timer
+     */
+    public void start() {
+        plugin.getPersistenceService().submit(() -> FileNames.renameLegacyFolders(folder, plugin.getLogger()));
+        long interval = Math.max(1, plugin.getConfig().getLong("attempt-history.flush-interval-seconds", 60)) * 20L;
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::flush, interval, interval);
+    }
+
+    /**
+     * Record an attempt. Must be called on the main thread.
+     * @param mapName The map name
+     * @param playerId Player UUID
+     * @param duration Time in milliseconds
+     * @param timestamp When the attempt ended
+     * @param outcome How it ended
+     */
+    public void record(String mapName, UUID playerId, long duration, long timestamp, AttemptOutcome outcome) {
+        if (!plugin.getConfig().getBoolean("attempt-history.enabled", true)) {
+            return;
+        }
+
+        PendingBlock block = pending.computeIfAbsent(mapName, k -> new PendingBlock());
+        block.add(playerId, duration, timestamp, outcome);
+
+        if (block.size >= Math.max(16, plugin.getConfig().getInt("attempt-history.block-size", 1024))) {
+            pending.remove(mapName);
+            write(mapName, block);
+        }
+    }
+
+    /**
+     * Hand every buffered attempt to the writer thread. Must be called on the main thread.
+     */
+    public void flush() {
+        for (Map.Entry<String, PendingBlock> entry : pending.entrySet()) {
+            write(entry.getKey(), entry.getValue());
+        }
+        pending.clear();
+    }
+
+    /**
+     * Stream the attempts written for a map, oldest first. Attempts still buffered are not
+     * included. Safe to use from any thread; close it when done.
+     * @param mapName The map name
+     */
+    public AttemptIterator iterate(String mapName) {
+        return new AttemptIterator(plugin.getLogger(), mapName, listSegments(getMapFolder(mapName)));
+    }
+
+    // The block is no longer touched on the main thread, so it is encoded on the writer
+    private void write(String mapName, PendingBlock block) {
+        plugin.getPersistenceService().submit(() -> append(mapName, block));
+    }
+
+    private void append(String mapName, PendingBlock block) {
+        byte[] payload = block.encode();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        File segment = getSegment(mapName);
+        boolean fresh = segment.length() == 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segment, true)))) {
+            if (fresh) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+            }
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not write attempt history for " + mapName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Find the segment to append to, repairing a torn tail the first time and rotating full segments
+     */
+    private File getSegment(String mapName) {
+        File mapFolder = getMapFolder(mapName);
+        File segment = currentSegments.get(mapName);
+
+        if (segment == null) {
+            mapFolder.mkdirs();
+            File[] segments = listSegments(mapFolder);
+            segment = segments.length > 0 ? segments[segments.length - 1] : segmentFile(mapFolder, 1);
+            if (segment.exists() && !repair(segment)) {
+                segment = segmentFile(mapFolder, segmentNumber(segment) + 1);
+            }
+        }
+
+        if (segment.length() >= Math.max(4096, plugin.getConfig().getLong("attempt-history.segment-bytes", 4194304))) {
+            segment = segmentFile(mapFolder, segmentNumber(segment) + 1);
+        }
+
+        currentSegments.put(mapName, segment);
+        return segment;
+    }
+
+    /**
+     * Cut off a block torn by a crash so appends stay readable
+     * @return false if the segment is not ours to append to
+     */
+    private boolean repair(File segment) {
+        long validLength = 8;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                return false;
+            }
+
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return true;
+                }
+
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_BLOCK_BYTES) {
+                    throw new IOException("Bad block length " + length);
+                }
+
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Bad block checksum");
+                }
+                validLength += 8 + length;
+            }
+        } catch (IOException e) {
+            if (validLength == 8 && segment.length() < 8) {
+                // Not even a full header; start the segment over
+                validLength = 0;
+            }
+            plugin.getLogger().warning("Attempt history " + segment.getPath() + " is damaged, dropping its tail: " + e.getMessage());
+            try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+                raf.setLength(validLength);
+            } catch (IOException truncateError) {
+                plugin.getLogger().severe("Could not repair " + segment.getPath() + ": " + truncateError.getMessage());
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Get a map's segments in the order they were written
+     */
+    // Map names can come from addons, so they are encoded to stay inside the history folder
+    private File getMapFolder(String mapName) {
+        return new File(folder, FileNames.encode(mapName));
+    }
+
+    static File[] listSegments(File mapFolder) {
+        File[] segments = mapFolder.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (segments == null) {
+            return new File[0];
+        }
+        Arrays.sort(segments, Comparator.comparingInt(AttemptHistory::segmentNumber));
+        return segments;
+    }
+
+    private static File segmentFile(File mapFolder, int number) {
+        return new File(mapFolder, String.format("%08d", number) + SEGMENT_SUFFIX);
+    }
+
+    private static int segmentNumber(File segment) {
+        String name = segment.getName();
+        try {
+            return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Stop the timer and hand the remaining attempts to the writer thread
+     */
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        flush();
+    }
+
+    /**
+     * Attempts of one map waiting to be written, one array per column
+     */
+    private static class PendingBlock {
+        private UUID[] players = new UUID[16];
+        private long[] durations = new long[16];
+        private long[] timestamps = new long[16];
+        private AttemptOutcome[] outcomes = new AttemptOutcome[16];
+        private int size;
+
+        private void add(UUID playerId, long duration, long timestamp, AttemptOutcome outcome) {
+            if (size == players.length) {
+                players = Arrays.copyOf(players, size * 2);
+                durations = Arrays.copyOf(durations, size * 2);
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                outcomes = Arrays.copyOf(outcomes, size * 2);
+            }
+
+            players[size] = playerId;
+            durations[size] = duration;
+            timestamps[size] = timestamp;
+            outcomes[size] = outcome;
+            size++;
+        }
+
+        private byte[] encode() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size * 8 + 64);
+            writeVarint(out, size);
+
+            // Attempts end close together and take similar times, so deltas stay small
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                writeVarint(out, zigzag(timestamps[i] - previous));
+                previous = timestamps[i];
+            }
+
+            previous = 0;
+            for (int i = 0; i < size; i++) {
+                writeVarint(out, zigzag(durations[i] - previous));
+                previous = durations[i];
+            }
+
+            // The same few players make most attempts
+            Map<UUID, Integer> dictionary = new LinkedHashMap<>();
+            int[] indexes = new int[size];
+            for (int i = 0; i < size; i++) {
+                indexes[i] = dictionary.computeIfAbsent(players[i], k -> dictionary.size());
+            }
+            writeVarint(out, dictionary.size());
+            for (UUID playerId : dictionary.keySet()) {
+                writeLong(out, playerId.getMostSignificantBits());
+                writeLong(out, playerId.getLeastSignificantBits());
+            }
+            for (int i = 0; i < size; i++) {
+                writeVarint(out, indexes[i]);
+            }
+
+            // Outcomes as (ordinal, run length) pairs
+            int i = 0;
+            while (i < size) {
+                int run = 1;
+                while (i + run < size && outcomes[i + run] == outcomes[i]) {
+                    run++;
+                }
+                writeVarint(out, outcomes[i].ordinal());
+                writeVarint(out, run);
+                i += run;
+            }
+
+            return out.toByteArray();
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.stufy.fragmc.icedspear.storage;
+
+import com.stufy.fragmc.icedspear.models.Attempt;
+import com.stufy.fragmc.icedspear.models.AttemptOutcome;
+
+import java.io.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a map's attempt history one block at a time, so memory use does not grow with the
+ * history. A damaged block ends its segment; reading carries on with the next one.
+ */
+public class AttemptIterator implements Iterator<Attempt>, Closeable {
+    private static final AttemptOutcome[] OUTCOMES = AttemptOutcome.values();
+
+    private final Logger logger;
+    private final String mapName;
+    private final File[] segments;
+    private final CRC32 crc;
+
+    private int nextSegment;
+    private DataInputStream in;
+
+    // Columns of the current block
+    private long[] timestamps = new long[0];
+    private long[] durations = new long[0];
+    private UUID[] players = new UUID[0];
+    private AttemptOutcome[] outcomes = new AttemptOutcome[0];
+    private int blockSize;
+    private int position;
+
+    AttemptIterator(Logger logger, String mapName, File[] segments) {
+        this.logger = logger;
+        this.mapName = mapName;
+        this.segments = segments;
+        this.crc = new CRC32();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (position >= blockSize) {
+            if (!readBlock()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Attempt next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        int i = position++;
+        return new Attempt(players[i], mapName, durations[i], timestamps[i], outcomes[i]);
+    }
+
+    /**
+     * Load the next block, opening the next segment when the current one runs out
+     * @return false once every segment has been read
+     */
+    private boolean readBlock() {
+        while (true) {
+            if (in == null && !openNextSegment()) {
+                return false;
+            }
+
+            try {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    closeSegment();
+                    continue;
+                }
+
+                int checksum = in.readInt();
+                if (length <= 0 || length > AttemptHistory.MAX_BLOCK_BYTES) {
+                    throw new IOException("Bad block length " + length);
+                }
+
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Bad block checksum");
+                }
+
+                decode(payload);
+                return true;
+            } catch (IOException | RuntimeException e) {
+                // A block still being appended looks torn too; only report real damage
+                if (nextSegment < segments.length) {
+                    logger.warning("Attempt history " + segments[nextSegment - 1].getPath() + " is damaged: " + e.getMessage());
+                }
+                closeSegment();
+            }
+        }
+    }
+
+    private boolean openNextSegment() {
+        while (nextSegment < segments.length) {
+            File segment = segments[nextSegment++];
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)));
+                if (in.readInt() == AttemptHistory.MAGIC && in.readInt() == AttemptHistory.FORMAT) {
+                    return true;
+                }
+                logger.warning("Skipping attempt history " + segment.getPath() + ": unknown format");
+            } catch (IOException e) {
+                // Missing or empty segment
+            }
+            closeSegment();
+        }
+        return false;
+    }
+
+    private void decode(byte[] payload) throws IOException {
+        Reader reader = new Reader(payload);
+        int size = (int) reader.readVarint();
+        if (size < 0 || size > payload.length) {
+            throw new IOException("Bad block size " + size);
+        }
+
+        if (timestamps.length < size) {
+            timestamps = new long[size];
+            durations = new long[size];
+            players = new UUID[size];
+            outcomes = new AttemptOutcome[size];
+        }
+
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += unzigzag(reader.readVarint());
+            timestamps[i] = previous;
+        }
+
+        previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += unzigzag(reader.readVarint());
+            durations[i] = previous;
+        }
+
+        UUID[] dictionary = new UUID[(int) reader.readVarint()];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = new UUID(reader.readLong(), reader.readLong());
+        }
+        for (int i = 0; i < size; i++) {
+            players[i] = dictionary[(int) reader.readVarint()];
+        }
+
+        int i = 0;
+        while (i < size) {
+            AttemptOutcome outcome = OUTCOMES[(int) reader.readVarint()];
+            long run = reader.readVarint();
+            if (run <= 0 || run > size - i) {
+                throw new IOException("Bad outcome run " + run);
+            }
+            for (long j = 0; j < run; j++) {
+                outcomes[i++] = outcome;
+            }
+        }
+
+        blockSize = size;
+        position = 0;
+    }
+
+    private void closeSegment() {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+            in = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        closeSegment();
+        nextSegment = segments.length;
+        blockSize = 0;
+        position = 0;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Varint reader over a block payload
+     */
+    private static class Reader {
+        private final byte[] bytes;
+        private int offset;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (offset >= bytes.length) {
+                    throw new EOFException("Block ends inside a value");
+                }
+                byte b = bytes[offset++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Varint too long");
+        }
+
+        private long readLong() throws IOException {
+            if (offset + 8 > bytes.length) {
+                throw new EOFException("Block ends inside a value");
+            }
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (bytes[offset++] & 0xFF);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.stufy.fragmc.icedspear.storage;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+/**
+ * Turns names that come from players, admins or addons into safe file names
+ */
+public final class FileNames {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private FileNames() {
+    }
+
+    /**
+     * Encode a name as a single path element. Lower-case letters, digits, '-' and '_' are kept,
+     * so most map names stay readable; every other byte, upper-case letters included, becomes %XX.
+     * The result can never be ".", ".." or contain a separator, and different names never encode
+     * the same, even on a file system that ignores case.
+     * @param name The name, e.g. a map name
+     * @return The file name
+     */
+    public static String encode(String name) {
+        StringBuilder encoded = new StringBuilder(name.length());
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            if ((b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '-' || b == '_') {
+                encoded.append((char) b);
+            } else {
+                encoded.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+            }
+        }
+
+        // An empty name would resolve to the parent folder itself
+        return encoded.length() > 0 ? encoded.toString() : "%";
+    }
+
+    /**
+     * Move folders named before upper-case letters were escaped to their current names. Such a
+     * folder has no '%' in its name, so its name is the name it was made for.
+     * @param parent The folder holding one folder per encoded name
+     */
+    public static void renameLegacyFolders(File parent, Logger logger) {
+        File[] folders = parent.listFiles(File::isDirectory);
+        if (folders == null) {
+            return;
+        }
+
+        for (File folder : folders) {
+            String name = folder.getName();
+            if (name.indexOf('%') >= 0 || name.equals(encode(name))) {
+                continue;
+            }
+
+            File target = new File(parent, encode(name));
+            if (target.exists() || !folder.renameTo(target)) {
+                logger.warning("Could not rename " + folder.getPath() + " to " + target.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.stufy.fragmc.icedspear.storage;
+
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Where friendships are kept between restarts. Friendships are mutual; the storage keeps both directions.
+ */
+public interface FriendStorage {
+
+    /**
+     * Read every stored friendship
+     * @param consumer Receives a player and one of their friends, once for each direction
+     */
+    void loadFriendships(BiConsumer<UUID, UUID> consumer);
+
+    /**
+     * Store a new friendship. Called on the main thread; the write happens in the background.
+     */
+    void addFriendship(UUID player, UUID friend);
+
+    /**
+     * Remove a friendship. Called on the main thread; the write happens in the background.
+     */
+    void removeFriendship(UUID player, UUID friend);
+
+    /**
+     * Finish pending writes and release the storage
+     */
+    void close();
+}
@@ -0,0 +1,159 @@
+package com.stufy.fragmc.icedspear.storage;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+import com.stufy.fragmc.icedspear.models.LeaderboardEntry;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of leaderboard times. Every record is one personal best, written as
+ * length, CRC32 and payload, so a record torn by a crash is detected and dropped on replay.
+ * Replaying a record is the same as submitting the time again, which makes replays idempotent.
+ */
+public class LeaderboardLog {
+    private final IcedSpear plugin;
+    private final File logFile;
+    private final File rolledFile;
+    private DataOutputStream out;
+
+    public LeaderboardLog(IcedSpear plugin, File logFile) {
+        this.plugin = plugin;
+        this.logFile = logFile;
+        this.rolledFile = new File(logFile.getPath() + ".1");
+    }
+
+    /**
+     * Replay the rolled log left by an unfinished compaction, then the current log
+     * @param consumer Receives the map name and entry of every intact record
+     * @return The number of records replayed
+     */
+    public int replay(BiConsumer<String, LeaderboardEntry> consumer) {
+        return replay(rolledFile, consumer) + replay(logFile, consumer);
+    }
+
+    private int replay(File file, BiConsumer<String, LeaderboardEntry> consumer) {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int count = 0;
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                int checksum = in.readInt();
+                if (length <= 0 || length > 1 << 16) {
+                    throw new IOException("Bad record length " + length);
+                }
+
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Bad record checksum");
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                String mapName = record.readUTF();
+                UUID playerId = new UUID(record.readLong(), record.readLong());
+                String playerName = record.readUTF();
+                long time = record.readLong();
+                long timestamp = record.readLong();
+
+                consumer.accept(mapName, new LeaderboardEntry(playerId, playerName, time, timestamp));
+                validLength += 8 + length;
+                count++;
+            }
+        } catch (IOException e) {
+            // Only the tail can be torn; keep what was read and cut the rest off so appends stay readable
+            plugin.getLogger().warning("Leaderboard log " + file.getName() + " is damaged after " + count
+                    + " records, dropping the rest: " + e.getMessage());
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            } catch (IOException truncateError) {
+                plugin.getLogger().severe("Could not repair " + file.getName() + ": " + truncateError.getMessage());
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Append a record to the log
+     */
+    public void append(String mapName, LeaderboardEntry entry) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        DataOutputStream record = new DataOutputStream(buffer);
+        record.writeUTF(mapName);
+        record.writeLong(entry.getPlayerId().getMostSignificantBits());
+        record.writeLong(entry.getPlayerId().getLeastSignificantBits());
+        record.writeUTF(entry.getPlayerName());
+        record.writeLong(entry.getTime());
+        record.writeLong(entry.getTimestamp());
+
+        byte[] payload = buffer.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        DataOutputStream stream = getStream();
+        stream.writeInt(payload.length);
+        stream.writeInt((int) crc.getValue());
+        stream.write(payload);
+        stream.flush();
+    }
+
+    /**
+     * Move the current log aside so new records go to a fresh one. Call this right
+     * before capturing the state a snapshot is written from.
+     * @throws IOException If the log could not be moved
+     */
+    public void roll() throws IOException {
+        if (rolledFile.exists()) {
+            // An earlier snapshot failed; the next one covers both logs and replaying the current one again is harmless
+            return;
+        }
+
+        close();
+        if (logFile.exists()) {
+            Files.move(logFile.toPath(), rolledFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Drop the rolled log once the snapshot that covers it has been written
+     */
+    public void discardRolled() {
+        rolledFile.delete();
+    }
+
+    private DataOutputStream getStream() throws IOException {
+        if (out == null) {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+        }
+        return out;
+    }
+
+    public void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                plugin.getLogger().warning("Could not close " + logFile.getName() + ": " + e.getMessage());
+            }
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.stufy.fragmc.icedspear.storage;
+
+import com.stufy.fragmc.icedspear.models.LeaderboardEntry;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Where leaderboard times are kept between restarts
+ */
+public interface LeaderboardStorage {
+
+    /**
+     * Read every stored time. A player may come up more than once for a map; the best time wins.
+     * @param consumer Receives the map name and entry of each stored time
+     */
+    void loadTimes(BiConsumer<String, LeaderboardEntry> consumer);
+
+    /**
+     * Get how many of the best times per map to keep in memory. Backends that can look up and
+     * rank the other times themselves return a limit and implement the queries below.
+     * @return The number of places, or 0 to load every time through {@link #loadTimes(BiConsumer)}
+     */
+    default int getCachedPlaces() {
+        return 0;
+    }
+
+    /**
+     * Read the best times of each map
+     * @param places Number of times to read per map
+     * @param consumer Receives the map name and entry of each time
+     */
+    default void loadTopTimes(int places, BiConsumer<String, LeaderboardEntry> consumer) {
+        loadTimes(consumer);
+    }
+
+    /**
+     * Read how many players have a time on each map
+     */
+    default void loadPlayerCounts(BiConsumer<String, Integer> consumer) {
+    }
+
+    /**
+     * Look up a player's stored time. Runs on the calling thread.
+     * @return The entry, or null if the player has none
+     */
+    default LeaderboardEntry findTime(String mapName, UUID playerId) {
+        return null;
+    }
+
+    /**
+     * Count the stored times on a map that are faster than an entry. Runs on the calling thread.
+     */
+    default int countFaster(String mapName, LeaderboardEntry entry) {
+        return 0;
+    }
+
+    /**
+     * Store a new personal best. Called on the main thread; the write happens in the background.
+     */
+    void saveTime(String mapName, LeaderboardEntry entry);
+
+    /**
+     * Check if the storage wants the full leaderboards passed to {@link #compact(Map)}
+     */
+    default boolean needsCompaction() {
+        return false;
+    }
+
+    /**
+     * Rewrite the storage from the full leaderboards, for backends that only append
+     */
+    default void compact(Map<String, List<LeaderboardEntry>> leaderboards) {
+    }
+
+    /**
+     * Finish pending writes and release the storage
+     */
+    void close();
+}
@@ -0,0 +1,366 @@
+package com.stufy.fragmc.icedspear.storage;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+import com.stufy.fragmc.icedspear.models.LeaderboardEntry;
+
+import java.io.File;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * Stores leaderboards and friendships in an SQLite database, using the driver the server ships with.
+ * Changes are queued from the main thread and written in batches, one transaction per batch,
+ * on the persistence writer thread. Only the best storage.sqlite.cached-places times per map are
+ * loaded; times below them are looked up and ranked through the (map, time) index on a second,
+ * read-only connection.
+ */
+public class SqliteStorage implements LeaderboardStorage, FriendStorage {
+    private static final String UPSERT_TIME = "INSERT INTO leaderboard_times (map, player, name, time, timestamp) "
+            + "VALUES (?, ?, ?, ?, ?) ON CONFLICT (map, player) DO UPDATE SET name = excluded.name, "
+            + "time = excluded.time, timestamp = excluded.timestamp WHERE excluded.time < leaderboard_times.time";
+    private static final String INSERT_FRIEND = "INSERT OR IGNORE INTO friendships (player, friend) VALUES (?, ?)";
+    private static final String DELETE_FRIEND = "DELETE FROM friendships WHERE player = ? AND friend = ?";
+    private static final String SELECT_TOP_TIMES = "SELECT player, name, time, timestamp FROM leaderboard_times "
+            + "WHERE map = ? ORDER BY time, timestamp LIMIT ?";
+    private static final String SELECT_TIME = "SELECT name, time, timestamp FROM leaderboard_times WHERE map = ? AND player = ?";
+    private static final String COUNT_FASTER = "SELECT (SELECT COUNT(*) FROM leaderboard_times WHERE map = ? AND time < ?) "
+            + "+ (SELECT COUNT(*) FROM leaderboard_times WHERE map = ? AND time = ? AND timestamp < ?)";
+
+    private final IcedSpear plugin;
+    private final Connection connection;
+
+    // Lookups from the main thread, so they never wait on a batch being written
+    private final Connection reader;
+    private final int cachedPlaces;
+
+    // Changes waiting for the writer thread, in the order they were made
+    private final Queue<PendingWrite> pending;
+    private final AtomicBoolean drainQueued;
+    private boolean closed;
+
+    public SqliteStorage(IcedSpear plugin, File databaseFile) throws SQLException {
+        this.plugin = plugin;
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.drainQueued = new AtomicBoolean();
+
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite driver not available", e);
+        }
+
+        this.connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+        try {
+            this.reader = openTables(databaseFile);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        this.cachedPlaces = Math.max(0, plugin.getConfig().getInt("storage.sqlite.cached-places", 1000));
+    }
+
+    /**
+     * Create the tables if needed and open the read-only connection
+     */
+    private Connection openTables(File databaseFile) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode = WAL");
+            statement.execute("PRAGMA synchronous = NORMAL");
+            statement.execute("CREATE TABLE IF NOT EXISTS leaderboard_times ("
+                    + "map TEXT NOT NULL, player TEXT NOT NULL, name TEXT NOT NULL, "
+                    + "time INTEGER NOT NULL, timestamp INTEGER NOT NULL, PRIMARY KEY (map, player))");
+            statement.execute("CREATE INDEX IF NOT EXISTS leaderboard_times_map_time ON leaderboard_times (map, time)");
+            statement.execute("CREATE INDEX IF NOT EXISTS leaderboard_times_player ON leaderboard_times (player)");
+            statement.execute("CREATE TABLE IF NOT EXISTS friendships ("
+                    + "player TEXT NOT NULL, friend TEXT NOT NULL, PRIMARY KEY (player, friend))");
+        }
+
+        Connection reader = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+        try (Statement statement = reader.createStatement()) {
+            statement.execute("PRAGMA query_only = true");
+        } catch (SQLException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    @Override
+    public void loadTimes(BiConsumer<String, LeaderboardEntry> consumer) {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT map, player, name, time, timestamp FROM leaderboard_times")) {
+            while (result.next()) {
+                consumer.accept(result.getString(1), new LeaderboardEntry(UUID.fromString(result.getString(2)),
+                        result.getString(3), result.getLong(4), result.getLong(5)));
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Could not load leaderboards: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int getCachedPlaces() {
+        return cachedPlaces;
+    }
+
+    @Override
+    public void loadTopTimes(int places, BiConsumer<String, LeaderboardEntry> consumer) {
+        List<String> maps = new ArrayList<>();
+        try (Statement statement = reader.createStatement();
+             ResultSet result = statement.executeQuery("SELECT DISTINCT map FROM leaderboard_times")) {
+            while (result.next()) {
+                maps.add(result.getString(1));
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Could not load leaderboards: " + e.getMessage());
+            return;
+        }
+
+        // One index range per map, so only the loaded rows are read
+        try (PreparedStatement select = reader.prepareStatement(SELECT_TOP_TIMES)) {
+            for (String mapName : maps) {
+                select.setString(1, mapName);
+                select.setInt(2, places);
+                try (ResultSet result = select.executeQuery()) {
+                    while (result.next()) {
+                        consumer.accept(mapName, new LeaderboardEntry(UUID.fromString(result.getString(1)),
+                                result.getString(2), result.getLong(3), result.getLong(4)));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Could not load leaderboards: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void loadPlayerCounts(BiConsumer<String, Integer> consumer) {
+        try (Statement statement = reader.createStatement();
+             ResultSet result = statement.executeQuery("SELECT map, COUNT(*) FROM leaderboard_times GROUP BY map")) {
+            while (result.next()) {
+                consumer.accept(result.getString(1), result.getInt(2));
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Could not count leaderboard times: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public LeaderboardEntry findTime(String mapName, UUID playerId) {
+        try (PreparedStatement select = reader.prepareStatement(SELECT_TIME)) {
+            select.setString(1, mapName);
+            select.setString(2, playerId.toString());
+            try (ResultSet result = select.executeQuery()) {
+                return result.next() ? new LeaderboardEntry(playerId, result.getString(1), result.getLong(2), result.getLong(3)) : null;
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().warning("Could not look up the time of " + playerId + " on " + mapName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public int countFaster(String mapName, LeaderboardEntry entry) {
+        try (PreparedStatement count = reader.prepareStatement(COUNT_FASTER)) {
+            count.setString(1, mapName);
+            count.setLong(2, entry.getTime());
+            count.setString(3, mapName);
+            count.setLong(4, entry.getTime());
+            count.setLong(5, entry.getTimestamp());
+            try (ResultSet result = count.executeQuery()) {
+                return result.next() ? result.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().warning("Could not rank a time on " + mapName + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public void loadFriendships(BiConsumer<UUID, UUID> consumer) {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT player, friend FROM friendships")) {
+            while (result.next()) {
+                consumer.accept(UUID.fromString(result.getString(1)), UUID.fromString(result.getString(2)));
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Could not load friendships: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void saveTime(String mapName, LeaderboardEntry entry) {
+        queue(new PendingWrite(PendingWrite.TIME, mapName, entry, null, null));
+    }
+
+    @Override
+    public void addFriendship(UUID player, UUID friend) {
+        queue(new PendingWrite(PendingWrite.ADD_FRIEND, null, null, player, friend));
+    }
+
+    @Override
+    public void removeFriendship(UUID player, UUID friend) {
+        queue(new PendingWrite(PendingWrite.REMOVE_FRIEND, null, null, player, friend));
+    }
+
+    private void queue(PendingWrite write) {
+        pending.add(write);
+        // One drain picks up everything queued until it runs
+        if (drainQueued.compareAndSet(false, true)) {
+            plugin.getPersistenceService().submit(this::drain);
+        }
+    }
+
+    private void drain() {
+        drainQueued.set(false);
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        int count = 0;
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement upsertTime = connection.prepareStatement(UPSERT_TIME);
+                 PreparedStatement insertFriend = connection.prepareStatement(INSERT_FRIEND);
+                 PreparedStatement deleteFriend = connection.prepareStatement(DELETE_FRIEND)) {
+                PendingWrite write;
+                while ((write = pending.poll()) != null) {
+                    count++;
+                    if (write.type == PendingWrite.TIME) {
+                        bindTime(upsertTime, write.mapName, write.entry);
+                        upsertTime.addBatch();
+                        continue;
+                    }
+
+                    // Adding and removing the same pair must stay in order, so these are not batched
+                    PreparedStatement statement = write.type == PendingWrite.ADD_FRIEND ? insertFriend : deleteFriend;
+                    statement.setString(1, write.player.toString());
+                    statement.setString(2, write.friend.toString());
+                    statement.executeUpdate();
+                    statement.setString(1, write.friend.toString());
+                    statement.setString(2, write.player.toString());
+                    statement.executeUpdate();
+                }
+
+                upsertTime.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Could not write " + count + " changes to the database: " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+                // Nothing more to do
+            }
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ignored) {
+                // The next drain sets it again
+            }
+        }
+    }
+
+    private void bindTime(PreparedStatement statement, String mapName, LeaderboardEntry entry) throws SQLException {
+        statement.setString(1, mapName);
+        statement.setString(2, entry.getPlayerId().toString());
+        statement.setString(3, entry.getPlayerName());
+        statement.setLong(4, entry.getTime());
+        statement.setLong(5, entry.getTimestamp());
+    }
+
+    /**
+     * Check if the database holds no leaderboard times and no friendships
+     */
+    public boolean isEmpty() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT (SELECT COUNT(*) FROM leaderboard_times) + (SELECT COUNT(*) FROM friendships)")) {
+            return !result.next() || result.getLong(1) == 0;
+        }
+    }
+
+    /**
+     * Insert times and friendships in one transaction, keeping the best time per player.
+     * Runs on the calling thread; only use this before the storage is handed to the managers.
+     * @param times Map name and entry of each time
+     * @param friendships Each player and friend, once for each direction
+     */
+    public void importData(List<Map.Entry<String, LeaderboardEntry>> times, List<Map.Entry<UUID, UUID>> friendships) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement upsertTime = connection.prepareStatement(UPSERT_TIME);
+             PreparedStatement insertFriend = connection.prepareStatement(INSERT_FRIEND)) {
+            for (Map.Entry<String, LeaderboardEntry> time : times) {
+                bindTime(upsertTime, time.getKey(), time.getValue());
+                upsertTime.addBatch();
+            }
+            upsertTime.executeBatch();
+
+            for (Map.Entry<UUID, UUID> friendship : friendships) {
+                insertFriend.setString(1, friendship.getKey().toString());
+                insertFriend.setString(2, friendship.getValue().toString());
+                insertFriend.addBatch();
+            }
+            insertFriend.executeBatch();
+
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Write what is still queued and close the database. Safe to call more than once.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            reader.close();
+        } catch (SQLException e) {
+            plugin.getLogger().warning("Could not close the database: " + e.getMessage());
+        }
+
+        plugin.getPersistenceService().submit(() -> {
+            drain();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                plugin.getLogger().warning("Could not close the database: " + e.getMessage());
+            }
+        });
+    }
+
+    private static class PendingWrite {
+        private static final int TIME = 0;
+        private static final int ADD_FRIEND = 1;
+        private static final int REMOVE_FRIEND = 2;
+
+        private final int type;
+        private final String mapName;
+        private final LeaderboardEntry entry;
+        private final UUID player;
+        private final UUID friend;
+
+        private PendingWrite(int type, String mapName, LeaderboardEntry entry, UUID player, UUID friend) {
+            this.type = type;
+            this.mapName = mapName;
+            this.entry = entry;
+            this.player = player;
+            this.friend = friend;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.stufy.fragmc.icedspear.storage;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Stores friendships in friends.yml as a list of friends per player
+ */
+public class YamlFriendStorage implements FriendStorage {
+    private final IcedSpear plugin;
+    private final File friendsFile;
+    private final FileConfiguration friendsConfig;
+
+    public YamlFriendStorage(IcedSpear plugin) {
+        this.plugin = plugin;
+        this.friendsFile = new File(plugin.getDataFolder(), "friends.yml");
+        this.friendsConfig = YamlConfiguration.loadConfiguration(friendsFile);
+    }
+
+    @Override
+    public void loadFriendships(BiConsumer<UUID, UUID> consumer) {
+        ConfigurationSection section = friendsConfig.getConfigurationSection("friendships");
+        if (section == null) {
+            return;
+        }
+
+        for (String key : section.getKeys(false)) {
+            UUID playerId = UUID.fromString(key);
+            for (String friendId : friendsConfig.getStringList("friendships." + key)) {
+                consumer.accept(playerId, UUID.fromString(friendId));
+            }
+        }
+    }
+
+    @Override
+    public void addFriendship(UUID player, UUID friend) {
+        addTo(player, friend);
+        addTo(friend, player);
+        save();
+    }
+
+    @Override
+    public void removeFriendship(UUID player, UUID friend) {
+        removeFrom(player, friend);
+        removeFrom(friend, player);
+        save();
+    }
+
+    private void addTo(UUID player, UUID friend) {
+        String path = "friendships." + player;
+        List<String> friendIds = friendsConfig.getStringList(path);
+        if (!friendIds.contains(friend.toString())) {
+            friendIds.add(friend.toString());
+            friendsConfig.set(path, friendIds);
+        }
+    }
+
+    private void removeFrom(UUID player, UUID friend) {
+        String path = "friendships." + player;
+        List<String> friendIds = friendsConfig.getStringList(path);
+        if (friendIds.remove(friend.toString())) {
+            friendsConfig.set(path, friendIds);
+        }
+    }
+
+    private void save() {
+        plugin.getPersistenceService().markDirty(friendsFile, friendsConfig::saveToString);
+    }
+
+    @Override
+    public void close() {
+        // Pending changes are written by the persistence service's final flush
+    }
+}
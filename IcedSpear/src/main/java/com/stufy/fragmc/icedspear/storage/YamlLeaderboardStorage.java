@@ -0,0 +1,161 @@
+package com.stufy.fragmc.icedspear.storage;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+import com.stufy.fragmc.icedspear.models.LeaderboardEntry;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Stores leaderboards in files. New times are appended to leaderboards.log; leaderboards.yml
+ * is a snapshot that the log is compacted into. Both are written on the persistence writer thread.
+ */
+public class YamlLeaderboardStorage implements LeaderboardStorage {
+    private final IcedSpear plugin;
+    private final File leaderboardFile;
+    private final LeaderboardLog log;
+
+    private int recordsSinceCompaction;
+
+    public YamlLeaderboardStorage(IcedSpear plugin) {
+        this.plugin = plugin;
+        this.leaderboardFile = new File(plugin.getDataFolder(), "leaderboards.yml");
+        this.log = new LeaderboardLog(plugin, new File(plugin.getDataFolder(), "leaderboards.log"));
+    }
+
+    /**
+     * Load the snapshot, then replay the times recorded since it was written
+     */
+    @Override
+    public void loadTimes(BiConsumer<String, LeaderboardEntry> consumer) {
+        FileConfiguration leaderboardConfig = YamlConfiguration.loadConfiguration(leaderboardFile);
+
+        // Load all map leaderboards
+        if (leaderboardConfig.contains("leaderboards")) {
+            ConfigurationSection section = leaderboardConfig.getConfigurationSection("leaderboards");
+            if (section != null) {
+                for (String mapName : section.getKeys(false)) {
+                    ConfigurationSection mapSection = section.getConfigurationSection(mapName);
+                    if (mapSection != null) {
+                        for (String key : mapSection.getKeys(false)) {
+                            String playerName = mapSection.getString(key + ".name");
+                            String playerUuid = mapSection.getString(key + ".uuid");
+                            long time = mapSection.getLong(key + ".time");
+                            long timestamp = mapSection.getLong(key + ".timestamp", System.currentTimeMillis());
+
+                            if (playerName != null && playerUuid != null) {
+                                consumer.accept(mapName, new LeaderboardEntry(
+                                        UUID.fromString(playerUuid),
+                                        playerName,
+                                        time,
+                                        timestamp
+                                ));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        // Times recorded since the snapshot was written
+        recordsSinceCompaction = log.replay(consumer);
+        if (recordsSinceCompaction > 0) {
+            plugin.getLogger().info("Replayed " + recordsSinceCompaction + " leaderboard records");
+        }
+    }
+
+    @Override
+    public void saveTime(String mapName, LeaderboardEntry entry) {
+        plugin.getPersistenceService().submit(() -> {
+            try {
+                log.append(mapName, entry);
+            } catch (IOException e) {
+                plugin.getLogger().severe("Could not write to leaderboards.log: " + e.getMessage());
+            }
+        });
+        recordsSinceCompaction++;
+    }
+
+    @Override
+    public boolean needsCompaction() {
+        return recordsSinceCompaction >= getCompactThreshold();
+    }
+
+    private int getCompactThreshold() {
+        return Math.max(1, plugin.getConfig().getInt("leaderboards.compact-after-records", 1000));
+    }
+
+    /**
+     * Fold the log into a new snapshot. The leaderboards are a copy taken now; the log is rolled
+     * on the writer thread behind every append queued so far, so the snapshot covers exactly
+     * the rolled records.
+     */
+    @Override
+    public void compact(Map<String, List<LeaderboardEntry>> snapshot) {
+        recordsSinceCompaction = 0;
+
+        plugin.getPersistenceService().submit(() -> {
+            try {
+                log.roll();
+            } catch (IOException e) {
+                plugin.getLogger().warning("Could not roll leaderboards.log: " + e.getMessage());
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+            // If this fails the rolled log stays and is replayed at the next start
+            if (saveSnapshot(snapshot)) {
+                log.discardRolled();
+                plugin.getLogger().fine("Compacted leaderboards in " + (System.currentTimeMillis() - start) + "ms");
+            }
+        });
+    }
+
+    /**
+     * Write a snapshot of the leaderboards, replacing leaderboards.yml atomically.
+     * Works on its own copy, so it can run off the main thread.
+     */
+    private boolean saveSnapshot(Map<String, List<LeaderboardEntry>> snapshot) {
+        YamlConfiguration config = new YamlConfiguration();
+
+        for (Map.Entry<String, List<LeaderboardEntry>> entry : snapshot.entrySet()) {
+            String mapName = entry.getKey();
+            List<LeaderboardEntry> entries = entry.getValue();
+
+            for (int i = 0; i < entries.size(); i++) {
+                LeaderboardEntry lbEntry = entries.get(i);
+                String path = "leaderboards." + mapName + "." + i;
+
+                config.set(path + ".name", lbEntry.getPlayerName());
+                config.set(path + ".uuid", lbEntry.getPlayerId().toString());
+                config.set(path + ".time", lbEntry.getTime());
+                config.set(path + ".timestamp", lbEntry.getTimestamp());
+            }
+        }
+
+        try {
+            File temp = new File(leaderboardFile.getPath() + ".tmp");
+            config.save(temp);
+            Files.move(temp.toPath(), leaderboardFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not save leaderboards.yml: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Close the log. Records not compacted yet are replayed at the next start.
+     */
+    @Override
+    public void close() {
+        plugin.getPersistenceService().submit(log::close);
+    }
+}
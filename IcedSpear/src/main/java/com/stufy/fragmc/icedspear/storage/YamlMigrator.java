@@ -0,0 +1,71 @@
+package com.stufy.fragmc.icedspear.storage;
+
+import com.stufy.fragmc.icedspear.IcedSpear;
+import com.stufy.fragmc.icedspear.models.LeaderboardEntry;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Copies leaderboards and friendships from the YAML files into the database the first time
+ * it is used, then renames the files so they are not imported again.
+ */
+public class YamlMigrator {
+    private static final String[] FILES = {"leaderboards.yml", "leaderboards.log", "leaderboards.log.1", "friends.yml"};
+
+    private final IcedSpear plugin;
+
+    public YamlMigrator(IcedSpear plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Import the YAML files into an empty database
+     * @param database The database to fill
+     * @throws SQLException If the import failed; the files are left in place
+     */
+    public void migrate(SqliteStorage database) throws SQLException {
+        if (!hasYamlFiles()) {
+            return;
+        }
+
+        if (!database.isEmpty()) {
+            plugin.getLogger().warning("Leaderboard and friend files exist next to a database that already has data, "
+                    + "leaving them alone");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        List<Map.Entry<String, LeaderboardEntry>> times = new ArrayList<>();
+        new YamlLeaderboardStorage(plugin).loadTimes((mapName, entry) -> times.add(new AbstractMap.SimpleEntry<>(mapName, entry)));
+
+        List<Map.Entry<UUID, UUID>> friendships = new ArrayList<>();
+        new YamlFriendStorage(plugin).loadFriendships((player, friend) -> friendships.add(new AbstractMap.SimpleEntry<>(player, friend)));
+
+        database.importData(times, friendships);
+
+        for (String fileName : FILES) {
+            File file = new File(plugin.getDataFolder(), fileName);
+            if (file.exists() && !file.renameTo(new File(plugin.getDataFolder(), fileName + ".migrated"))) {
+                plugin.getLogger().warning("Could not rename " + fileName + " after migrating it");
+            }
+        }
+
+        plugin.getLogger().info("Migrated " + times.size() + " leaderboard times and " + friendships.size()
+                + " friendships to the database in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private boolean hasYamlFiles() {
+        for (String fileName : FILES) {
+            if (new File(plugin.getDataFolder(), fileName).exists()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}